@@ -0,0 +1,289 @@
+package Tutorial;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Подготовка PDF арканов к выкладке (запускается при сборке с профилем assets).
+ *
+ * <p>Файлы из исходной папки выбираются по тем же правилам имен, что и у бота
+ * ({@link ArcanumAssets}), одинаковые по содержимому файлы обрабатываются один раз.
+ * В каждом PDF изображения с большей стороной длиннее заданной уменьшаются
+ * и пережимаются в JPEG, несжатые изображения пережимаются, если это дает выигрыш,
+ * а сам документ сохраняется с потоками объектов (сжатые таблицы и словари).
+ * Если результат получился не меньше исходного файла, берется исходный файл.
+ *
+ * <p>Линеаризация (fast web view) - по желанию, внешним qpdf: PDFBox линеаризованные
+ * файлы не пишет. По умолчанию она выключена: клиенты Telegram скачивают документ
+ * целиком и только потом открывают, так что порядок объектов для постраничной
+ * загрузки им ничего не дает, а таблицы подсказок немного увеличивают файл.
+ * Пригодится, если те же PDF раздаются еще и по HTTP с запросами диапазонов.
+ *
+ * <p>Готовые файлы называются по хэшу содержимого, рядом пишется
+ * manifest.properties: слот (аркан и пол) = файл, размер, sha256.
+ * Бот при наличии манифеста строит таблицу файлов по нему.
+ *
+ * <p>Запуск: mvn -Passets process-classes
+ * (линеаризация: -Dassets.qpdf=qpdf или путь к qpdf;
+ * или java Tutorial.AssetOptimizer вход выход [качество JPEG] [макс. сторона изображения] [qpdf])
+ */
+public final class AssetOptimizer {
+
+    // Имя готового файла: первые 16 символов sha256 содержимого
+    private static final Pattern RESULT_NAME = Pattern.compile("[0-9a-f]{16}\\.pdf");
+
+    private final float jpegQuality;
+    private final int maxImageSide;
+
+    // Пережатые изображения: одно изображение может использоваться на нескольких страницах
+    private final Map<COSBase, PDImageXObject> replaced = new IdentityHashMap<>();
+    private final Set<COSBase> kept = new HashSet<>();
+    private int imagesShrunk;
+
+    private AssetOptimizer(float jpegQuality, int maxImageSide) {
+        this.jpegQuality = jpegQuality;
+        this.maxImageSide = maxImageSide;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Использование: AssetOptimizer <папка PDF> <папка результата> [качество JPEG 0-1] [макс. сторона изображения] [qpdf для линеаризации]");
+            return;
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        float quality = args.length > 2 ? Float.parseFloat(args[2]) : 0.8f;
+        int maxSide = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+        // Пустое свойство assets.qpdf exec-maven-plugin передает как null
+        String qpdf = args.length > 4 && args[4] != null && !args[4].isBlank() ? args[4] : null;
+        if (quality <= 0 || quality > 1 || maxSide < 1) {
+            throw new IllegalArgumentException("Качество JPEG должно быть от 0 до 1, размер изображения - больше 0");
+        }
+        optimizeDirectory(input, output, quality, maxSide, qpdf);
+    }
+
+    /**
+     * Обработка всех PDF арканов и запись манифеста
+     * @param input Папка с исходными PDF (имена как у бота)
+     * @param output Папка результата (лишние PDF из нее удаляются)
+     * @param quality Качество JPEG при пережатии изображений
+     * @param maxSide Максимальная сторона изображения в пикселях
+     * @param qpdf Команда qpdf для линеаризации (null - без линеаризации)
+     */
+    static void optimizeDirectory(Path input, Path output, float quality, int maxSide, String qpdf)
+            throws IOException {
+        Files.createDirectories(output);
+        // Из папки результата удаляются лишние PDF - в исходной папке это были бы сами исходники
+        Path realInput = input.toRealPath();
+        Path realOutput = output.toRealPath();
+        if (realOutput.startsWith(realInput)) {
+            throw new IllegalArgumentException("Папка результата " + realOutput
+                    + " не должна совпадать с папкой исходных PDF или лежать внутри нее");
+        }
+        ArcanumAssets source = new ArcanumAssets(input);
+
+        // Результат по хэшу исходного файла: одинаковые файлы под разными именами обрабатываются один раз
+        Map<String, String> bySourceHash = new HashMap<>();
+        StringBuilder manifest = new StringBuilder("# Таблица PDF арканов, собрана AssetOptimizer из ")
+                .append(input.getFileName()).append('\n')
+                .append("# слот=файл размер sha256\n");
+        long sourceBytes = 0;
+        long resultBytes = 0;
+
+        for (int arcanum = 0; arcanum <= ArcanumAssets.ARCANUM_COUNT; arcanum++) {
+            for (boolean male : new boolean[]{true, false}) {
+                if (arcanum == 0 && !male) {
+                    continue;
+                }
+                // Аркан 0 - файл по умолчанию
+                ArcanumAssets.Asset asset = source.find(arcanum, male);
+                if (asset == null) {
+                    continue;
+                }
+                String entry = bySourceHash.get(asset.sha256());
+                if (entry == null) {
+                    entry = optimizeFile(asset, output, quality, maxSide, qpdf);
+                    bySourceHash.put(asset.sha256(), entry);
+                    sourceBytes += asset.size();
+                    resultBytes += Long.parseLong(entry.split(" ")[1]);
+                }
+                String key = arcanum == 0 ? ArcanumAssets.DEFAULT_KEY : ArcanumAssets.manifestKey(arcanum, male);
+                manifest.append(key).append('=').append(entry).append('\n');
+            }
+        }
+
+        // Манифест подменяется целиком: бот, следящий за папкой, не увидит его наполовину записанным
+        Path manifestPath = output.resolve(ArcanumAssets.MANIFEST_FILE);
+        Path tmp = output.resolve(ArcanumAssets.MANIFEST_FILE + ".tmp");
+        Files.writeString(tmp, manifest, StandardCharsets.UTF_8);
+        Files.move(tmp, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Файлы прошлых сборок, на которые манифест больше не ссылается
+        Set<String> used = new HashSet<>();
+        bySourceHash.values().forEach(entry -> used.add(entry.split(" ")[0]));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(output, "*.pdf")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                // Удаляются только файлы с именами по хэшу, которые пишет сам AssetOptimizer
+                if (RESULT_NAME.matcher(name).matches() && !used.contains(name)) {
+                    Files.delete(file);
+                }
+            }
+        }
+        source.close();
+
+        System.out.printf("PDF арканов: %d уникальных файлов, %.1f МБ -> %.1f МБ (%s)%n", bySourceHash.size(),
+                sourceBytes / 1048576.0, resultBytes / 1048576.0, output.toAbsolutePath());
+    }
+
+    /**
+     * Сжатие одного PDF и запись результата под именем по хэшу содержимого
+     * @return Строка манифеста: файл размер sha256
+     */
+    private static String optimizeFile(ArcanumAssets.Asset asset, Path output, float quality, int maxSide,
+                                       String qpdf) throws IOException {
+        Path tmp = output.resolve(asset.sha256() + ".tmp");
+        AssetOptimizer optimizer = new AssetOptimizer(quality, maxSide);
+        try (PDDocument document = Loader.loadPDF(asset.file())) {
+            for (PDPage page : document.getPages()) {
+                optimizer.shrinkImages(document, page.getResources());
+            }
+            document.save(tmp.toFile(), CompressParameters.DEFAULT_COMPRESSION);
+        }
+        // Выигрыша нет (изображения уже сжаты) - оставляем исходный файл как есть
+        if (Files.size(tmp) >= asset.size()) {
+            Files.copy(asset.file().toPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (qpdf != null) {
+            linearize(qpdf, tmp);
+        }
+
+        long size = Files.size(tmp);
+        String sha256 = DocumentCache.sha256(tmp);
+        String name = sha256.substring(0, 16) + ".pdf";
+        Files.move(tmp, output.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        System.out.printf("  %-22s %8d КБ -> %8d КБ, изображений уменьшено: %d%n", asset.file().getName(),
+                asset.size() / 1024, size / 1024, optimizer.imagesShrunk);
+        return name + " " + size + " " + sha256;
+    }
+
+    /**
+     * Линеаризация файла на месте внешним qpdf (потоки объектов сохраняются)
+     * @param qpdf Команда qpdf
+     * @param file Файл PDF
+     */
+    private static void linearize(String qpdf, Path file) throws IOException {
+        Path linearized = file.resolveSibling(file.getFileName() + ".lin");
+        Process process = new ProcessBuilder(qpdf, "--linearize", "--object-streams=generate",
+                file.toString(), linearized.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Линеаризация " + file.getFileName() + " прервана", e);
+        }
+        // 3 - qpdf справился, но с предупреждениями о структуре исходного файла
+        if (exitCode != 0 && exitCode != 3) {
+            Files.deleteIfExists(linearized);
+            throw new IOException("qpdf завершился с кодом " + exitCode + " на " + file.getFileName());
+        }
+        Files.move(linearized, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Замена изображений страницы или формы на уменьшенные (формы обходятся рекурсивно)
+     */
+    private void shrinkImages(PDDocument document, PDResources resources) throws IOException {
+        if (resources == null) {
+            return;
+        }
+        for (COSName name : resources.getXObjectNames()) {
+            PDXObject object = resources.getXObject(name);
+            if (object instanceof PDImageXObject image) {
+                COSBase key = image.getCOSObject();
+                PDImageXObject smaller = replaced.get(key);
+                if (smaller == null && !kept.contains(key)) {
+                    smaller = shrink(document, image);
+                    if (smaller != null) {
+                        replaced.put(key, smaller);
+                        imagesShrunk++;
+                    } else {
+                        kept.add(key);
+                    }
+                }
+                if (smaller != null) {
+                    resources.put(name, smaller);
+                }
+            } else if (object instanceof PDFormXObject form && kept.add(form.getCOSObject())) {
+                shrinkImages(document, form.getResources());
+            }
+        }
+    }
+
+    /**
+     * Уменьшенная и пережатая в JPEG копия изображения
+     * @return Новое изображение или null, если изображение лучше оставить как есть
+     */
+    private PDImageXObject shrink(PDDocument document, PDImageXObject image) throws IOException {
+        // Маски и прозрачность JPEG не передает
+        if (image.isStencil() || image.getSoftMask() != null || image.getColorKeyMask() != null) {
+            return null;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxImageSide / Math.max(width, height));
+        // Изображения нормального размера, уже сжатые с потерями, не трогаем
+        boolean lossy = "jpg".equals(image.getSuffix()) || "jpx".equals(image.getSuffix());
+        if (scale == 1.0 && lossy) {
+            return null;
+        }
+
+        BufferedImage source = image.getImage();
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        int type = source.getColorModel().getNumColorComponents() == 1
+                ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, type);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        PDImageXObject candidate = JPEGFactory.createFromImage(document, target, jpegQuality);
+        return candidate.getCOSObject().getLength() < image.getCOSObject().getLength() ? candidate : null;
+    }
+}
@@ -0,0 +1,42 @@
+package Tutorial;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Настройки бота для бенчмарков: временные файлы состояния и лимиты Telegram,
+ * снятые настолько, чтобы измерялся сам бот, а не ожидание токенов
+ */
+final class BenchSettings {
+
+    private BenchSettings() {
+    }
+
+    /**
+     * @param workDir Папка для журнала сессий, кэша file_id, событий воронки и рассылок
+     * @param baseUrl Адрес заглушки Bot API (null - адрес по умолчанию)
+     * @return Настройки процесса, дополненные настройками бенчмарка
+     */
+    static BotConfig create(Path workDir, String baseUrl) throws IOException {
+        Map<String, String> env = new HashMap<>(System.getenv());
+        env.put("TELEGRAM_BOT_TOKEN", "bench");
+        env.put("SESSION_DIR", workDir.resolve("sessions").toString());
+        env.put("FILE_ID_INDEX", workDir.resolve("file_ids.properties").toString());
+        env.put("FUNNEL_DIR", workDir.resolve("funnel").toString());
+        env.put("BROADCAST_DIR", workDir.resolve("broadcast").toString());
+        env.putIfAbsent("PDF_DIR", "pdfs");
+        env.put("OUTBOUND_GLOBAL_RATE", "1e9");
+        env.put("OUTBOUND_CHAT_RATE", "1e9");
+        env.put("OUTBOUND_CHAT_BURST", "1e9");
+        env.putIfAbsent("OUTBOUND_THREADS", "64");
+        // Синтетические пользователи проходят диалог быстрее живых
+        env.put("UPDATE_CHAT_RATE", "1e9");
+        env.put("UPDATE_CHAT_BURST", "1e9");
+        if (baseUrl != null) {
+            env.put("BOT_API_URL", baseUrl);
+        }
+        return BotConfig.load(env);
+    }
+}
@@ -0,0 +1,137 @@
+package Tutorial;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Document;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Полный диалог (пол, имя, дата рождения, PDF, описание услуг) через
+ * onUpdateReceived с заглушкой вместо HTTP-клиента Bot API.
+ * Запуск с профилировщиком аллокаций: java -jar target/benchmarks.jar DialogBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DialogBenchmark {
+
+    private static final long REPLY_TIMEOUT_MS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class BotState {
+        Path workDir;
+        ReplyTracker tracker;
+        StubbedBot bot;
+        final AtomicLong chatIds = new AtomicLong(1_000_000);
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            workDir = Files.createTempDirectory("dialog-bench");
+            tracker = new ReplyTracker();
+            bot = new StubbedBot(BenchSettings.create(workDir, null), tracker);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            bot.onClosing();
+        }
+    }
+
+    @Benchmark
+    public void fullDialog(BotState state) throws InterruptedException, TimeoutException {
+        long chatId = state.chatIds.incrementAndGet();
+        for (Updates.Step step : Updates.Step.values()) {
+            state.bot.onUpdateReceived(step.update(chatId));
+            state.tracker.await(chatId, step.replies, REPLY_TIMEOUT_MS);
+        }
+        state.tracker.forget(chatId);
+    }
+
+    @Benchmark
+    public void startCommand(BotState state) throws InterruptedException, TimeoutException {
+        long chatId = state.chatIds.incrementAndGet();
+        state.bot.onUpdateReceived(Updates.Step.START.update(chatId));
+        state.tracker.await(chatId, Updates.Step.START.replies, REPLY_TIMEOUT_MS);
+        state.tracker.forget(chatId);
+    }
+
+    /**
+     * Бот, у которого запросы к Bot API не уходят в сеть: запрос сериализуется,
+     * как это делает библиотека, и сразу получает успешный ответ
+     */
+    static final class StubbedBot extends Tutorial {
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        private final ReplyTracker tracker;
+
+        StubbedBot(BotConfig config, ReplyTracker tracker) throws IOException {
+            super(config);
+            this.tracker = tracker;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> sendApiMethodAsync(
+                Method method) {
+            try {
+                MAPPER.writeValueAsBytes(method);
+            } catch (JsonProcessingException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            if (!(method instanceof SendMessage message)) {
+                // answerCallbackQuery - не ответ в чат
+                return CompletableFuture.completedFuture((T) Boolean.TRUE);
+            }
+            long chatId = Long.parseLong(message.getChatId());
+            tracker.record(chatId);
+            return CompletableFuture.completedFuture((T) message(chatId, null));
+        }
+
+        @Override
+        public CompletableFuture<Message> executeAsync(SendDocument sendDocument) {
+            long chatId = Long.parseLong(sendDocument.getChatId());
+            tracker.record(chatId);
+            return CompletableFuture.completedFuture(message(chatId, "stub-" + sendDocument.getDocument().getMediaName()));
+        }
+
+        private static Message message(long chatId, String fileId) {
+            Chat chat = new Chat();
+            chat.setId(chatId);
+            Message message = new Message();
+            message.setChat(chat);
+            if (fileId != null) {
+                Document document = new Document();
+                document.setFileId(fileId);
+                message.setDocument(document);
+            }
+            return message;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package Tutorial;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Локальная заглушка api.telegram.org: принимает запросы бота вида
+ * /bot&lt;токен&gt;/&lt;метод&gt; и сразу отвечает успешным результатом.
+ * Бот направляется на нее настройкой BOT_API_URL=http://localhost:&lt;порт&gt;/bot
+ */
+final class FakeBotApi implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ReplyTracker tracker;
+    private final AtomicInteger messageId = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+
+    /**
+     * @param tracker Куда отмечать отправленные ботом сообщения
+     */
+    FakeBotApi(ReplyTracker tracker) throws IOException {
+        // Без TCP_NODELAY ответы на локальном интерфейсе задерживаются на ~40 мс (Nagle + delayed ACK)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.tracker = tracker;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.start();
+    }
+
+    /**
+     * @return Значение для BOT_API_URL
+     */
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/bot";
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    long uploadedBytes() {
+        return uploadedBytes.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.increment();
+            String path = exchange.getRequestURI().getPath();
+            String method = path.substring(path.lastIndexOf('/') + 1).toLowerCase();
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+
+            long chatId;
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType != null && contentType.startsWith("multipart/form-data")) {
+                // Загрузка документа: chat_id - отдельное поле формы
+                uploadedBytes.add(body.length);
+                chatId = Long.parseLong(formField(new String(body, StandardCharsets.ISO_8859_1), "chat_id"));
+            } else {
+                JsonNode request = MAPPER.readTree(body);
+                chatId = request.path("chat_id").asLong();
+            }
+
+            if (method.equals("answercallbackquery")) {
+                // Ответ на нажатие кнопки - не сообщение в чат
+                respond(exchange, "{\"ok\":true,\"result\":true}");
+                return;
+            }
+            respond(exchange, result(method, chatId));
+            tracker.record(chatId);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] response = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    /**
+     * Ответ Bot API: отправленное сообщение (для документа - с file_id)
+     */
+    private String result(String method, long chatId) {
+        String document = method.equals("senddocument")
+                ? ",\"document\":{\"file_id\":\"fake-" + chatId % 22 + "\",\"file_unique_id\":\"u\"}"
+                : "";
+        return "{\"ok\":true,\"result\":{\"message_id\":" + messageId.incrementAndGet()
+                + ",\"date\":0,\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}" + document + "}}";
+    }
+
+    /**
+     * Значение простого поля multipart-формы
+     */
+    private static String formField(String body, String name) {
+        String marker = "name=\"" + name + "\"";
+        int at = body.indexOf(marker);
+        int start = body.indexOf("\r\n\r\n", at) + 4;
+        int end = body.indexOf("\r\n", start);
+        return body.substring(start, end).trim();
+    }
+}
@@ -0,0 +1,70 @@
+package Tutorial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение разбора ввода через регулярные выражения (как было в Tutorial)
+ * и однопроходного {@link InputParser}.
+ * Запуск с профилировщиком аллокаций: java -jar target/benchmarks.jar InputParserBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputParserBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class DateInput {
+        @Param({"14.03.1990", "99.99.0000"})
+        public String birthdate;
+    }
+
+    @State(Scope.Benchmark)
+    public static class NameInput {
+        @Param({"Татьяна", "Tatiana1"})
+        public String name;
+    }
+
+    @Benchmark
+    public int birthdateRegex(DateInput input) {
+        String birthdate = input.birthdate;
+        // Проверка формата и повторный разбор той же строки в sendArcanumDocument
+        if (!birthdate.matches("\\d{2}\\.\\d{2}\\.\\d{4}")) {
+            return -1;
+        }
+        String[] parts = birthdate.split("\\.");
+        return Integer.parseInt(parts[0]) + Integer.parseInt(parts[1]) + Integer.parseInt(parts[2]);
+    }
+
+    @Benchmark
+    public int birthdateParser(DateInput input) {
+        int date = InputParser.parseBirthdate(input.birthdate);
+        if (date == InputParser.INVALID) {
+            return -1;
+        }
+        return InputParser.day(date) + InputParser.month(date) + InputParser.year(date);
+    }
+
+    @Benchmark
+    public boolean nameRegex(NameInput input) {
+        String name = input.name;
+        return name.matches("[A-Za-zА-Яа-яёЁ]+") && name.length() >= 2 && name.length() <= 50;
+    }
+
+    @Benchmark
+    public boolean nameParser(NameInput input) {
+        return InputParser.isValidName(input.name);
+    }
+}
@@ -0,0 +1,111 @@
+package Tutorial;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный тест: тысячи одновременных пользователей проходят диалог,
+ * бот отправляет ответы по HTTP в локальную заглушку Bot API ({@link FakeBotApi}).
+ * Шаги диалога выполняются всеми пользователями одновременно, по каждому шагу
+ * выводятся пропускная способность, p50/p99 задержки (от приема обновления до
+ * получения заглушкой всех ответов) и аллокации на один шаг.
+ *
+ * <p>Запуск: mvn -Pbench package && java -cp target/benchmarks.jar Tutorial.LoadTest [пользователей] [прогонов]
+ */
+public final class LoadTest {
+
+    private static final long REPLY_TIMEOUT_MS = 30_000;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        Path workDir = Files.createTempDirectory("load-test");
+        ReplyTracker tracker = new ReplyTracker();
+        try (FakeBotApi api = new FakeBotApi(tracker);
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            Tutorial bot = new Tutorial(BenchSettings.create(workDir, api.baseUrl()));
+            // Потоки бота (журнал, очередь исходящих, обработчики) не дадут JVM завершиться, если шаг упадет
+            try {
+                long nextChatId = 1;
+                for (int round = 1; round <= rounds; round++) {
+                    // Первые прогоны прогревают JIT, результаты последнего - итоговые
+                    System.out.printf("%nПрогон %d из %d, пользователей: %d%n", round, rounds, users);
+                    System.out.printf("%-18s %12s %10s %10s %14s%n", "шаг", "шагов/с", "p50 мс", "p99 мс", "аллок. КБ/шаг");
+                    long firstChatId = nextChatId;
+                    nextChatId += users;
+                    for (Updates.Step step : Updates.Step.values()) {
+                        runStep(bot, tracker, clients, step, firstChatId, users);
+                    }
+                    for (long chatId = firstChatId; chatId < nextChatId; chatId++) {
+                        tracker.forget(chatId);
+                    }
+                }
+                System.out.printf("%nЗапросов к Bot API: %d, загружено байт: %d%n", api.requests(), api.uploadedBytes());
+            } finally {
+                bot.onClosing();
+            }
+        }
+    }
+
+    /**
+     * Один шаг диалога для всех пользователей одновременно
+     */
+    private static void runStep(Tutorial bot, ReplyTracker tracker, ExecutorService clients,
+                                Updates.Step step, long firstChatId, int users) throws Exception {
+        long allocatedBefore = allocatedBytes();
+        long started = System.nanoTime();
+
+        List<Future<Long>> latencies = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            long chatId = firstChatId + i;
+            latencies.add(clients.submit(() -> {
+                long sent = System.nanoTime();
+                bot.onUpdateReceived(step.update(chatId));
+                tracker.await(chatId, step.replies, REPLY_TIMEOUT_MS);
+                return System.nanoTime() - sent;
+            }));
+        }
+        long[] nanos = new long[users];
+        for (int i = 0; i < users; i++) {
+            nanos[i] = latencies.get(i).get();
+        }
+
+        long elapsed = System.nanoTime() - started;
+        long allocated = allocatedBytes() - allocatedBefore;
+        Arrays.sort(nanos);
+        System.out.printf("%-18s %12.0f %10.2f %10.2f %14s%n",
+                step.name(),
+                users / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)),
+                percentile(nanos, 0.50) / 1e6,
+                percentile(nanos, 0.99) / 1e6,
+                allocated < 0 ? "н/д" : String.format("%.1f", allocated / 1024.0 / users));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    /**
+     * Всего выделено памяти всеми потоками JVM (вместе с заглушкой Bot API и клиентами)
+     * @return Байты или -1, если JVM не поддерживает подсчет
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            return threads.getTotalThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
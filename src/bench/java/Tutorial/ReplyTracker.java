@@ -0,0 +1,42 @@
+package Tutorial;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Учет ответов бота по чатам: шаг диалога ждет, пока в его чат
+ * не придет нужное количество исходящих сообщений
+ */
+final class ReplyTracker {
+
+    private final ConcurrentHashMap<Long, Semaphore> replies = new ConcurrentHashMap<>();
+
+    /**
+     * Бот отправил сообщение в чат
+     */
+    void record(long chatId) {
+        replies.computeIfAbsent(chatId, id -> new Semaphore(0)).release();
+    }
+
+    /**
+     * Ожидание ответов в чат
+     * @param chatId ID чата
+     * @param count Сколько сообщений ждать
+     * @param timeoutMs Сколько ждать
+     */
+    void await(long chatId, int count, long timeoutMs) throws InterruptedException, TimeoutException {
+        Semaphore semaphore = replies.computeIfAbsent(chatId, id -> new Semaphore(0));
+        if (!semaphore.tryAcquire(count, timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("Нет ответа в чат " + chatId);
+        }
+    }
+
+    /**
+     * Забыть чат после завершения диалога
+     */
+    void forget(long chatId) {
+        replies.remove(chatId);
+    }
+}
@@ -0,0 +1,117 @@
+package Tutorial;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Память на сессию: {@link CompactSessionStore} против двух карт, в которых бот
+ * хранил сессии раньше (HashMap&lt;Long, UserState&gt; и HashMap&lt;Long, Map&lt;String, String&gt;&gt;
+ * с ключами gender, name, birthdate).
+ *
+ * <p>Обе структуры заполняются одинаковыми сессиями пользователей, дошедших до
+ * подтверждения даты рождения: имя и дата - новые строки, как из входящего сообщения.
+ * Удерживаемая память - разница занятой кучи после полной сборки мусора до заполнения
+ * и после него, пока структура еще достижима.
+ *
+ * <p>Запуск: mvn -Pbench package && java -Xmx4g -cp target/benchmarks.jar Tutorial.SessionFootprint [сессий]
+ */
+public final class SessionFootprint {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private SessionFootprint() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        System.out.printf("Сессий: %d%n", sessions);
+        System.out.printf("%-34s %14s %12s%n", "хранилище", "занято МБ", "байт/сессию");
+
+        long before = retainedHeap();
+        Object[] maps = fillMaps(sessions);
+        long mapsBytes = retainedHeap() - before;
+        // Карты должны оставаться достижимыми до замера
+        Reference.reachabilityFence(maps);
+        report("HashMap<Long, UserState> + Map", mapsBytes, sessions);
+        maps = null;
+
+        before = retainedHeap();
+        CompactSessionStore store = fillStore(sessions);
+        long storeBytes = retainedHeap() - before;
+        Reference.reachabilityFence(store);
+        report("CompactSessionStore", storeBytes, sessions);
+        System.out.printf("%-34s %14.1f %12.1f%n", "  оценка estimatedBytes()",
+                store.estimatedBytes() / 1048576.0, (double) store.estimatedBytes() / sessions);
+
+        System.out.printf("%nCompactSessionStore занимает в %.1f раза меньше%n", (double) mapsBytes / storeBytes);
+    }
+
+    /**
+     * Сессии в картах, как их заполнял прежний код бота
+     */
+    private static Object[] fillMaps(int sessions) {
+        Map<Long, UserState> userStates = new HashMap<>();
+        Map<Long, Map<String, String>> userData = new HashMap<>();
+        for (int i = 0; i < sessions; i++) {
+            long chatId = 100_000_000L + i;
+            userStates.put(chatId, UserState.CONFIRM_BIRTHDATE);
+            Map<String, String> data = userData.computeIfAbsent(chatId, k -> new HashMap<>());
+            data.put("gender", i % 2 == 0 ? "gender_male" : "gender_female");
+            data.put("name", name(i));
+            data.put("birthdate", birthdate(i));
+        }
+        return new Object[]{userStates, userData};
+    }
+
+    /**
+     * Те же сессии в компактном хранилище
+     */
+    private static CompactSessionStore fillStore(int sessions) {
+        CompactSessionStore store = new CompactSessionStore(sessions * 2, TimeUnit.DAYS.toMillis(7));
+        for (int i = 0; i < sessions; i++) {
+            long chatId = 100_000_000L + i;
+            int date = InputParser.parseBirthdate(birthdate(i));
+            long session = Session.withState(Session.EMPTY, UserState.CONFIRM_BIRTHDATE);
+            session = Session.withGender(session, i % 2 == 0 ? Gender.MALE : Gender.FEMALE);
+            session = Session.withBirthdate(session, InputParser.day(date), InputParser.month(date), InputParser.year(date));
+            store.put(chatId, session);
+            store.putName(chatId, name(i));
+        }
+        return store;
+    }
+
+    private static String name(int i) {
+        return "Анна" + (char) ('а' + i % 32) + (char) ('а' + i / 32 % 32);
+    }
+
+    private static String birthdate(int i) {
+        return String.format("%02d.%02d.%04d", i % 28 + 1, i / 28 % 12 + 1, 1950 + i % 60);
+    }
+
+    /**
+     * Занятая куча после полной сборки мусора
+     */
+    private static long retainedHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        // Несколько сборок подряд, пока занятая память не перестанет уменьшаться
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            long current = MEMORY.getHeapMemoryUsage().getUsed();
+            if (current >= used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+
+    private static void report(String name, long bytes, int sessions) {
+        System.out.printf("%-34s %14.1f %12.1f%n", name, bytes / 1048576.0, (double) bytes / sessions);
+    }
+}
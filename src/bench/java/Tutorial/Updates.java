@@ -0,0 +1,97 @@
+package Tutorial;
+
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Синтетические обновления Telegram для бенчмарков и нагрузочного теста
+ */
+final class Updates {
+
+    /**
+     * Шаг диалога: входящее обновление и сколько сообщений бот отправляет в ответ
+     */
+    enum Step {
+        START("/start", false, 1),
+        GENDER(DialogFlow.Input.GENDER_FEMALE.callbackData, true, 1),
+        NAME("Татьяна", false, 1),
+        CONFIRM_NAME(DialogFlow.Input.YES.callbackData, true, 1),
+        BIRTHDATE("14.03.1990", false, 1),
+        // PDF документ и вопрос "Хотите узнать больше"
+        CONFIRM_BIRTHDATE(DialogFlow.Input.YES.callbackData, true, 2),
+        // Описание услуг и контакт
+        MORE(DialogFlow.Input.YES.callbackData, true, 2);
+
+        final String payload;
+        final boolean callback;
+        final int replies;
+
+        Step(String payload, boolean callback, int replies) {
+            this.payload = payload;
+            this.callback = callback;
+            this.replies = replies;
+        }
+
+        Update update(long chatId) {
+            return callback ? Updates.callback(chatId, payload) : Updates.text(chatId, payload);
+        }
+    }
+
+    private static final AtomicInteger UPDATE_ID = new AtomicInteger();
+
+    private Updates() {
+    }
+
+    /**
+     * Текстовое сообщение пользователя
+     */
+    static Update text(long chatId, String text) {
+        Message message = message(chatId);
+        message.setText(text);
+        Update update = new Update();
+        update.setUpdateId(UPDATE_ID.incrementAndGet());
+        update.setMessage(message);
+        return update;
+    }
+
+    /**
+     * Нажатие inline-кнопки под сообщением бота
+     */
+    static Update callback(long chatId, String data) {
+        CallbackQuery query = new CallbackQuery();
+        query.setId(String.valueOf(UPDATE_ID.get()));
+        query.setFrom(user(chatId));
+        query.setMessage(message(chatId));
+        query.setData(data);
+        Update update = new Update();
+        update.setUpdateId(UPDATE_ID.incrementAndGet());
+        update.setCallbackQuery(query);
+        return update;
+    }
+
+    private static Message message(long chatId) {
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        chat.setType("private");
+        Message message = new Message();
+        // Каждое нажатие - под своим сообщением, как у живого диалога
+        message.setMessageId(UPDATE_ID.get());
+        message.setDate((int) (System.currentTimeMillis() / 1000));
+        message.setChat(chat);
+        message.setFrom(user(chatId));
+        return message;
+    }
+
+    private static User user(long chatId) {
+        User user = new User();
+        user.setId(chatId);
+        user.setFirstName("Load");
+        user.setIsBot(false);
+        return user;
+    }
+}
@@ -0,0 +1,261 @@
+package Tutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Таблица PDF файлов арканов, построенная заранее.
+ * Для каждого из 22 арканов и каждого пола файл (с учетом универсального
+ * arcanum_X.pdf и default.pdf) определяется один раз при загрузке,
+ * поэтому поиск при отправке - это одно чтение из массива без обращений к диску.
+ * Если в папке есть manifest.properties (его пишет AssetOptimizer при сборке
+ * с профилем assets), таблица берется из него вместе с размерами и хэшами файлов,
+ * без перебора имен и без чтения PDF целиком.
+ * Фоновый поток следит за папкой и атомарно подменяет таблицу при изменении файлов.
+ */
+final class ArcanumAssets implements AutoCloseable {
+
+    // Количество арканов
+    static final int ARCANUM_COUNT = 22;
+
+    // Таблица файлов, собранная при сборке: слот (см. manifestKey) = файл размер sha256
+    static final String MANIFEST_FILE = "manifest.properties";
+
+    // Слот файла по умолчанию в манифесте
+    static final String DEFAULT_KEY = "default";
+
+    // Пауза после события файловой системы, чтобы дождаться окончания копирования файлов
+    private static final long RELOAD_DEBOUNCE_MS = 500;
+
+    /**
+     * Файл аркана с заранее посчитанными размером и хэшем содержимого
+     */
+    record Asset(File file, long size, long lastModified, String sha256) {
+    }
+
+    private final Path directory;
+
+    // Таблица [пол][аркан] в виде одного массива, заменяется целиком при перезагрузке
+    private volatile Asset[] table;
+
+    private volatile WatchService watchService;
+
+    /**
+     * @param directory Папка с PDF файлами арканов
+     */
+    ArcanumAssets(Path directory) throws IOException {
+        this.directory = directory;
+        this.table = buildTable(directory, new Asset[0]);
+    }
+
+    /**
+     * Поиск PDF файла аркана с учетом пола
+     * @param arcanumNumber Номер аркана (1-22)
+     * @param male true для мужчины, false для девушки
+     * @return Файл аркана, универсальный файл или default.pdf; null если нет даже его
+     */
+    Asset find(int arcanumNumber, boolean male) {
+        Asset[] current = table;
+        if (arcanumNumber < 1 || arcanumNumber > ARCANUM_COUNT) {
+            return current[0];
+        }
+        return current[index(arcanumNumber, male)];
+    }
+
+    /**
+     * Запуск фонового потока, перестраивающего таблицу при изменениях в папке
+     */
+    void startWatching() throws IOException {
+        WatchService service = FileSystems.getDefault().newWatchService();
+        directory.register(service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchService = service;
+
+        Thread watcher = new Thread(() -> watch(service), "arcanum-assets-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        WatchService service = watchService;
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    /**
+     * Цикл ожидания изменений в папке с PDF
+     * @param service Служба наблюдения за папкой
+     */
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                key.pollEvents();
+                key.reset();
+
+                // Собираем все события пачкой, пока файлы продолжают меняться
+                WatchKey more;
+                while ((more = service.poll(RELOAD_DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+
+                reload();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Наблюдение остановлено через close()
+        }
+    }
+
+    /**
+     * Перестроение таблицы; при ошибке продолжаем работать со старой таблицей
+     */
+    void reload() {
+        try {
+            table = buildTable(directory, table);
+            System.out.println("Таблица PDF арканов перезагружена из " + directory.toAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Построение таблицы файлов для всех арканов и обоих полов
+     * @param directory Папка с PDF файлами
+     * @param previous Предыдущая таблица, хэши неизмененных файлов берутся из нее
+     * @return Новая таблица; элемент 0 - default.pdf
+     */
+    private static Asset[] buildTable(Path directory, Asset[] previous) throws IOException {
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        if (Files.isRegularFile(manifest)) {
+            return loadManifest(directory, manifest);
+        }
+
+        Map<String, Asset> known = new HashMap<>();
+        for (Asset asset : previous) {
+            if (asset != null) {
+                known.put(asset.file().getAbsolutePath(), asset);
+            }
+        }
+
+        Asset fallback = resolve(directory.resolve("default.pdf"), known);
+        Asset[] result = new Asset[2 * (ARCANUM_COUNT + 1)];
+        result[0] = fallback;
+        result[ARCANUM_COUNT + 1] = fallback;
+
+        for (int arcanum = 1; arcanum <= ARCANUM_COUNT; arcanum++) {
+            // Универсальный файл (arcanum_X.pdf), если гендерного нет
+            Asset generic = resolve(directory.resolve("arcanum_" + arcanum + ".pdf"), known);
+            if (generic == null) {
+                generic = fallback;
+            }
+
+            // Гендерно-специфичные файлы (m_arcanum_X.pdf или f_arcanum_X.pdf)
+            Asset male = resolve(directory.resolve("m_arcanum_" + arcanum + ".pdf"), known);
+            Asset female = resolve(directory.resolve("f_arcanum_" + arcanum + ".pdf"), known);
+            result[index(arcanum, true)] = male != null ? male : generic;
+            result[index(arcanum, false)] = female != null ? female : generic;
+        }
+        return result;
+    }
+
+    /**
+     * Таблица из манифеста: файлы только проверяются на наличие и размер
+     * @param directory Папка с PDF файлами
+     * @param manifest Файл манифеста
+     * @return Таблица того же вида, что при переборе имен
+     */
+    private static Asset[] loadManifest(Path directory, Path manifest) throws IOException {
+        Properties entries = new Properties();
+        try (Reader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            entries.load(reader);
+        }
+        Asset fallback = manifestEntry(directory, entries, DEFAULT_KEY);
+        Asset[] result = new Asset[2 * (ARCANUM_COUNT + 1)];
+        result[0] = fallback;
+        result[ARCANUM_COUNT + 1] = fallback;
+        for (int arcanum = 1; arcanum <= ARCANUM_COUNT; arcanum++) {
+            for (boolean male : new boolean[]{true, false}) {
+                Asset asset = manifestEntry(directory, entries, manifestKey(arcanum, male));
+                result[index(arcanum, male)] = asset != null ? asset : fallback;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Файл слота из манифеста
+     * @return Описание файла или null, если слота нет в манифесте
+     * @throws IOException если файла нет или его размер не совпадает с манифестом
+     */
+    private static Asset manifestEntry(Path directory, Properties entries, String key) throws IOException {
+        String entry = entries.getProperty(key);
+        if (entry == null) {
+            return null;
+        }
+        String[] parts = entry.trim().split("\\s+");
+        if (parts.length != 3 || !parts[1].chars().allMatch(Character::isDigit)) {
+            throw new IOException("Некорректная строка манифеста PDF: " + key + "=" + entry);
+        }
+        File file = directory.resolve(parts[0]).toFile();
+        long size = Long.parseLong(parts[1]);
+        if (!file.isFile() || file.length() != size) {
+            throw new IOException("Файл " + file + " из манифеста PDF не найден или изменен");
+        }
+        return new Asset(file, size, file.lastModified(), parts[2]);
+    }
+
+    /**
+     * Слот аркана в манифесте
+     * @param arcanumNumber Номер аркана (1-22)
+     * @param male true для мужчины, false для девушки
+     * @return Ключ вида "3.male"
+     */
+    static String manifestKey(int arcanumNumber, boolean male) {
+        return arcanumNumber + (male ? ".male" : ".female");
+    }
+
+    /**
+     * Описание файла, если он существует; хэш пересчитывается только для измененных файлов
+     * @param path Путь к файлу
+     * @param known Файлы из предыдущей таблицы
+     * @return Описание файла или null, если его нет
+     */
+    private static Asset resolve(Path path, Map<String, Asset> known) throws IOException {
+        File file = path.toFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        Asset previous = known.get(file.getAbsolutePath());
+        if (previous != null && previous.size() == size && previous.lastModified() == lastModified) {
+            return previous;
+        }
+        return new Asset(file, size, lastModified, DocumentCache.sha256(path));
+    }
+
+    private static int index(int arcanumNumber, boolean male) {
+        return male ? ARCANUM_COUNT + 1 + arcanumNumber : arcanumNumber;
+    }
+}
@@ -0,0 +1,339 @@
+package Tutorial;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import io.github.cdimascio.dotenv.DotenvEntry;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Настройки бота, прочитанные и проверенные один раз при старте.
+ * Источники по возрастанию приоритета: файл настроек (путь в CONFIG_FILE, формат
+ * .properties), файл .env в рабочей папке (для разработки), переменные окружения.
+ * Все ошибки в значениях собираются и выводятся сразу, до запуска компонентов.
+ * Дальше настройки только читаются из final-полей: ни окружение, ни файлы
+ * на горячем пути больше не трогаются.
+ */
+final class BotConfig {
+
+    /**
+     * Режим работы процесса
+     */
+    enum Mode {
+        // Long polling (по умолчанию)
+        POLLING,
+        // Прием обновлений через webhook (в том числе узел кластера)
+        WEBHOOK,
+        // Входная точка кластера: только распределяет обновления по узлам
+        INGRESS
+    }
+
+    // Telegram и режим работы
+    final String token;
+    final Mode mode;
+    final String botApiUrl;
+
+    // Файлы и папки
+    final Path pdfDir;
+    final Path repliesFile;
+    final Path fileIdIndex;
+    final Path sessionDir;
+    final Path funnelDir;
+    final Path broadcastDir;
+
+    // Сессии
+    final int sessionMaxSize;
+    final long sessionTtlMs;
+    final long sessionRecoveryBudgetMs;
+    final String sessionStore;
+    final int sessionStoreTimeoutMs;
+    final int sessionStorePort;
+    final String sessionStoreBind;
+
+    // Матрица судьбы
+    final int matrixMinYear;
+    final int matrixMaxYear;
+
+    // Исходящие запросы и лимиты
+    final int outboundThreads;
+    final double outboundGlobalRate;
+    final double outboundChatRate;
+    final double outboundChatBurst;
+    final int outboundMaxQueuePerChat;
+    final int outboundMaxAttempts;
+
+    // HTTP-клиент Bot API: false - клиент библиотеки (по умолчанию), true - BotTransport
+    final boolean httpTransport;
+    final boolean http2;
+    final int httpMaxRequests;
+    final long httpConnectTimeoutMs;
+    final long httpRequestTimeoutMs;
+    final long httpUploadTimeoutMs;
+
+    // Входящие обновления
+    final double updateChatRate;
+    final double updateChatBurst;
+
+    // Заявка на прогноз на год после предложения услуг
+    final boolean forecastEnabled;
+
+    // cache_time ответов на inline-запросы (Telegram кэширует ответ на ту же дату у себя)
+    final int inlineCacheSeconds;
+
+    // Воронка и рассылки
+    final int funnelBuffer;
+    final Set<Long> adminChatIds;
+    final double broadcastRate;
+
+    // HTTP: метрики и webhook (порт 0 - любой свободный, -1 - метрики выключены)
+    final int metricsPort;
+    final int webhookPort;
+    final String webhookPath;
+    final String webhookSecret;
+    final String webhookUrl;
+    final long webhookReplyTimeoutMs;
+
+    // Кластер
+    final List<String> clusterNodes;
+    final String clusterAdminToken;
+    final long clusterForwardTimeoutMs;
+    // Узел за входной точкой: фильтр обновлений уже применен на входной точке
+    final boolean clusterWorker;
+
+    private BotConfig(Values values) {
+        token = values.string("TELEGRAM_BOT_TOKEN", null);
+        mode = values.mode("BOT_MODE");
+        botApiUrl = values.string("BOT_API_URL", null);
+
+        pdfDir = values.path("PDF_DIR", "pdfs");
+        repliesFile = values.path("REPLIES_FILE", null);
+        fileIdIndex = values.path("FILE_ID_INDEX", DocumentCache.DEFAULT_INDEX_FILE);
+        sessionDir = values.path("SESSION_DIR", "sessions");
+        funnelDir = values.path("FUNNEL_DIR", "funnel");
+        broadcastDir = values.path("BROADCAST_DIR", "broadcast");
+
+        sessionMaxSize = values.integer("SESSION_MAX_SIZE", 1_000_000, 1);
+        sessionTtlMs = TimeUnit.MINUTES.toMillis(values.number("SESSION_TTL_MINUTES", 10080, 1));
+        sessionRecoveryBudgetMs = values.number("SESSION_RECOVERY_BUDGET_MS", 10_000, 0);
+        sessionStore = values.string("SESSION_STORE", null);
+        sessionStoreTimeoutMs = values.integer("SESSION_STORE_TIMEOUT_MS", 2000, 1);
+        sessionStorePort = values.integer("SESSION_STORE_PORT", 7070, 0);
+        sessionStoreBind = values.string("SESSION_STORE_BIND", "127.0.0.1");
+
+        matrixMinYear = values.integer("MATRIX_MIN_YEAR", InputParser.MIN_YEAR, 1);
+        matrixMaxYear = values.integer("MATRIX_MAX_YEAR", InputParser.MAX_YEAR, matrixMinYear);
+
+        outboundThreads = values.integer("OUTBOUND_THREADS", 16, 1);
+        outboundGlobalRate = values.rate("OUTBOUND_GLOBAL_RATE", 30);
+        outboundChatRate = values.rate("OUTBOUND_CHAT_RATE", 1);
+        outboundChatBurst = values.rate("OUTBOUND_CHAT_BURST", 3);
+        outboundMaxQueuePerChat = values.integer("OUTBOUND_MAX_QUEUE_PER_CHAT", 50, 1);
+        outboundMaxAttempts = values.integer("OUTBOUND_MAX_ATTEMPTS", 5, 1);
+
+        httpTransport = values.choice("BOT_HTTP_TRANSPORT", "library", "jdk").equals("jdk");
+        http2 = values.choice("BOT_HTTP_VERSION", "2", "1.1").equals("2");
+        httpMaxRequests = values.integer("BOT_HTTP_MAX_REQUESTS", 32, 1);
+        httpConnectTimeoutMs = values.number("BOT_HTTP_CONNECT_TIMEOUT_MS", 5000, 1);
+        httpRequestTimeoutMs = values.number("BOT_HTTP_REQUEST_TIMEOUT_MS", 30_000, 1);
+        httpUploadTimeoutMs = values.number("BOT_HTTP_UPLOAD_TIMEOUT_MS", 120_000, 1);
+
+        updateChatRate = values.rate("UPDATE_CHAT_RATE", 1);
+        updateChatBurst = values.rate("UPDATE_CHAT_BURST", 5);
+
+        forecastEnabled = values.flag("FORECAST_ENABLED");
+        inlineCacheSeconds = values.integer("INLINE_CACHE_SECONDS", 86400, 0);
+
+        funnelBuffer = values.integer("FUNNEL_BUFFER", 65536, 2);
+        adminChatIds = values.chatIds("ADMIN_CHAT_IDS");
+        broadcastRate = values.rate("BROADCAST_RATE", 25);
+
+        metricsPort = values.integer("METRICS_PORT", -1, -1);
+        webhookPort = values.integer("WEBHOOK_PORT", 8080, 0);
+        webhookPath = values.string("WEBHOOK_PATH", "/webhook");
+        webhookSecret = values.string("WEBHOOK_SECRET", "");
+        webhookUrl = values.string("WEBHOOK_URL", null);
+        webhookReplyTimeoutMs = values.number("WEBHOOK_REPLY_TIMEOUT_MS", 5000, 0);
+
+        clusterNodes = ClusterIngress.parseNodes(values.string("CLUSTER_NODES", ""));
+        clusterAdminToken = values.string("CLUSTER_ADMIN_TOKEN", "");
+        clusterForwardTimeoutMs = values.number("CLUSTER_FORWARD_TIMEOUT_MS", 10_000, 1);
+        clusterWorker = values.flag("CLUSTER_WORKER");
+
+        // Без секрета webhook принимал бы обновления от любого, кто знает адрес.
+        // Telegram допускает в secret_token 1-256 символов A-Z, a-z, 0-9, _ и -.
+        // Тот же секрет кластера бот предъявляет общему хранилищу сессий
+        boolean secretValid = webhookSecret.matches("[A-Za-z0-9_-]{1,256}");
+        if ((mode == Mode.WEBHOOK || mode == Mode.INGRESS) && !secretValid) {
+            values.errors.add("WEBHOOK_SECRET: для режима " + mode.name().toLowerCase()
+                    + " нужен секрет из 1-256 символов A-Z, a-z, 0-9, _ и -");
+        } else if (sessionStore != null && !secretValid) {
+            values.errors.add("WEBHOOK_SECRET: для общего хранилища сессий нужен секрет из 1-256 символов A-Z, a-z, 0-9, _ и -");
+        }
+        if (clusterWorker && mode != Mode.WEBHOOK) {
+            values.errors.add("CLUSTER_WORKER: узел за входной точкой работает только в режиме webhook");
+        }
+        if (forecastEnabled && adminChatIds.isEmpty()) {
+            values.errors.add("FORECAST_ENABLED: заявки на прогноз некому отправлять, задайте ADMIN_CHAT_IDS");
+        }
+        if (mode == Mode.INGRESS && clusterNodes.isEmpty() && clusterAdminToken.isEmpty()) {
+            values.errors.add("CLUSTER_NODES: для входной точки нужны узлы или CLUSTER_ADMIN_TOKEN для их добавления");
+        }
+        if (!values.errors.isEmpty()) {
+            throw new IllegalStateException("Ошибки в настройках бота:\n  " + String.join("\n  ", values.errors));
+        }
+    }
+
+    /**
+     * Настройки процесса: окружение, .env и файл из CONFIG_FILE
+     * @return Проверенные настройки
+     */
+    static BotConfig load() throws IOException {
+        return load(System.getenv());
+    }
+
+    /**
+     * Настройки с явно заданным окружением (например, для нагрузочного теста)
+     * @param environment Переменные окружения (самый высокий приоритет)
+     * @return Проверенные настройки
+     */
+    static BotConfig load(Map<String, String> environment) throws IOException {
+        Map<String, String> dotenv = new HashMap<>();
+        for (DotenvEntry entry : Dotenv.configure().ignoreIfMissing().load().entries(Dotenv.Filter.DECLARED_IN_ENV_FILE)) {
+            dotenv.put(entry.getKey(), entry.getValue());
+        }
+
+        Map<String, String> merged = new HashMap<>();
+        String configFile = environment.getOrDefault("CONFIG_FILE", dotenv.get("CONFIG_FILE"));
+        if (configFile != null && !configFile.isEmpty()) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(Path.of(configFile))) {
+                properties.load(reader);
+            }
+            properties.forEach((key, value) -> merged.put(key.toString(), value.toString()));
+        }
+        merged.putAll(dotenv);
+        merged.putAll(environment);
+        return new BotConfig(new Values(merged));
+    }
+
+    /**
+     * @return Токен бота
+     * @throws IllegalStateException если токен не задан ни в одном источнике
+     */
+    String requireToken() {
+        if (token == null) {
+            throw new IllegalStateException("Токен бота не найден! Проверьте переменную TELEGRAM_BOT_TOKEN");
+        }
+        return token;
+    }
+
+    /**
+     * Чтение значений с разбором и сбором ошибок
+     */
+    private static final class Values {
+        final Map<String, String> values;
+        final List<String> errors = new ArrayList<>();
+
+        Values(Map<String, String> values) {
+            this.values = values;
+        }
+
+        String string(String key, String defaultValue) {
+            String value = values.get(key);
+            return value == null || value.isEmpty() ? defaultValue : value;
+        }
+
+        Path path(String key, String defaultValue) {
+            String value = string(key, defaultValue);
+            return value == null ? null : Path.of(value);
+        }
+
+        int integer(String key, int defaultValue, int min) {
+            return (int) Math.min(Integer.MAX_VALUE, number(key, defaultValue, min));
+        }
+
+        long number(String key, long defaultValue, long min) {
+            String value = string(key, null);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                long parsed = Long.parseLong(value.trim());
+                if (parsed >= min) {
+                    return parsed;
+                }
+            } catch (NumberFormatException e) {
+                // Ошибка добавляется ниже
+            }
+            errors.add(key + ": ожидается целое число не меньше " + min + ", получено '" + value + "'");
+            return defaultValue;
+        }
+
+        double rate(String key, double defaultValue) {
+            String value = string(key, null);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                double parsed = Double.parseDouble(value.trim());
+                if (parsed > 0 && Double.isFinite(parsed)) {
+                    return parsed;
+                }
+            } catch (NumberFormatException e) {
+                // Ошибка добавляется ниже
+            }
+            errors.add(key + ": ожидается положительное число, получено '" + value + "'");
+            return defaultValue;
+        }
+
+        boolean flag(String key) {
+            String value = string(key, "false").trim();
+            if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+                errors.add(key + ": ожидается true или false, получено '" + value + "'");
+            }
+            return value.equalsIgnoreCase("true");
+        }
+
+        Mode mode(String key) {
+            String value = string(key, Mode.POLLING.name());
+            try {
+                return Mode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                errors.add(key + ": ожидается polling, webhook или ingress, получено '" + value + "'");
+                return Mode.POLLING;
+            }
+        }
+
+        // Одно из допустимых значений, первое - по умолчанию
+        String choice(String key, String... options) {
+            String value = string(key, options[0]).trim().toLowerCase();
+            if (!Arrays.asList(options).contains(value)) {
+                errors.add(key + ": ожидается " + String.join(" или ", options) + ", получено '" + value + "'");
+                return options[0];
+            }
+            return value;
+        }
+
+        Set<Long> chatIds(String key) {
+            String value = string(key, "");
+            try {
+                return Arrays.stream(value.split("[,\\s]+")).filter(id -> !id.isEmpty())
+                        .map(Long::valueOf).collect(Collectors.toUnmodifiableSet());
+            } catch (NumberFormatException e) {
+                errors.add(key + ": ожидаются ID чатов через запятую, получено '" + value + "'");
+                return Set.of();
+            }
+        }
+    }
+}
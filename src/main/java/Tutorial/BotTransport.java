@@ -0,0 +1,441 @@
+package Tutorial;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.PartialBotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Клиент Bot API на java.net.http вместо HTTP-клиента библиотеки.
+ *
+ * <p>Соединения с api.telegram.org переиспользуются (keep-alive), по HTTPS
+ * используется HTTP/2: все запросы идут потоками одного соединения. Число
+ * одновременных запросов ограничено, лишние ждут в очереди без блокировки потоков.
+ * PDF загружается потоком из отображенного в память файла, в куче файл целиком не
+ * копируется. Счетчики запросов, открытых TLS-соединений, очереди и загруженных
+ * байт выгружаются в метрики: отношение запросов к соединениям показывает,
+ * насколько соединения переиспользуются.
+ *
+ * <p>Ошибки приводятся к тому же виду, что у библиотеки: ответ Telegram с ошибкой -
+ * TelegramApiRequestException с кодом, сетевая ошибка - TelegramApiRequestException без кода.
+ *
+ * <p>Включается явно: BOT_HTTP_TRANSPORT=jdk (по умолчанию - клиент библиотеки).
+ */
+final class BotTransport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Размер куска файла, который отдается HTTP-клиенту за раз
+    private static final int UPLOAD_CHUNK = 64 * 1024;
+
+    private final HttpClient client;
+    private final String methodUrl;
+    private final Duration requestTimeout;
+    private final Duration uploadTimeout;
+
+    // Ограничение одновременных запросов и очередь ожидающих
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder http2Requests = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+
+    /**
+     * @param baseUrl Адрес Bot API вместе с токеном и завершающим "/" (https://api.telegram.org/bot<токен>/)
+     * @param http2 true - HTTP/2 для HTTPS, false - только HTTP/1.1
+     * @param maxRequests Сколько запросов может выполняться одновременно
+     * @param connectTimeoutMs Таймаут установки соединения
+     * @param requestTimeoutMs Таймаут ответа на обычный запрос
+     * @param uploadTimeoutMs Таймаут ответа на запрос с загрузкой файла
+     */
+    BotTransport(String baseUrl, boolean http2, int maxRequests, long connectTimeoutMs,
+                 long requestTimeoutMs, long uploadTimeoutMs) {
+        this.methodUrl = baseUrl;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.uploadTimeout = Duration.ofMillis(uploadTimeoutMs);
+        this.permits = new Semaphore(maxRequests);
+        this.client = HttpClient.newBuilder()
+                // HTTP/2 без TLS (h2c) Bot API не поддерживает - по http:// сразу HTTP/1.1
+                .version(http2 && baseUrl.startsWith("https:") ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .sslContext(countingSslContext(connections))
+                .build();
+    }
+
+    /**
+     * Запрос Bot API с JSON-телом
+     * @param method Метод Bot API
+     * @return Результат метода
+     */
+    <T extends Serializable> CompletableFuture<T> call(BotApiMethod<T> method) {
+        byte[] body;
+        try {
+            method.validate();
+            body = MAPPER.writeValueAsBytes(method);
+        } catch (TelegramApiException e) {
+            return CompletableFuture.failedFuture(e);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new TelegramApiRequestException("Unable to serialize " + method.getMethod(), e));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(methodUrl + method.getMethod()))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return submit(request, method, method.getMethod());
+    }
+
+    /**
+     * Поддерживается ли отправка документа без клиента библиотеки:
+     * файл с диска или file_id, без миниатюры и разметки подписи
+     */
+    static boolean supports(SendDocument document) {
+        InputFile file = document.getDocument();
+        return file != null && (!file.isNew() || file.getNewMediaFile() != null)
+                && document.getThumb() == null
+                && (document.getCaptionEntities() == null || document.getCaptionEntities().isEmpty());
+    }
+
+    /**
+     * Отправка документа multipart-запросом; новый файл передается потоком из отображения в память
+     * @param document Запрос (см. {@link #supports(SendDocument)})
+     * @return Отправленное сообщение
+     */
+    CompletableFuture<Message> sendDocument(SendDocument document) {
+        try {
+            document.validate();
+            Multipart form = new Multipart();
+            form.field(SendDocument.CHATID_FIELD, document.getChatId());
+            form.field(SendDocument.CAPTION_FIELD, document.getCaption());
+            form.field(SendDocument.PARSEMODE_FIELD, document.getParseMode());
+            form.field(SendDocument.DISABLENOTIFICATION_FIELD, document.getDisableNotification());
+            form.field(SendDocument.REPLYTOMESSAGEID_FIELD, document.getReplyToMessageId());
+            form.field(SendDocument.ALLOWSENDINGWITHOUTREPLY_FIELD, document.getAllowSendingWithoutReply());
+            form.field(SendDocument.DISABLECONTENTTYPEDETECTION_FIELD, document.getDisableContentTypeDetection());
+            form.field(SendDocument.PROTECTCONTENT_FIELD, document.getProtectContent());
+            if (document.getReplyMarkup() != null) {
+                form.field(SendDocument.REPLYMARKUP_FIELD, MAPPER.writeValueAsString(document.getReplyMarkup()));
+            }
+
+            InputFile file = document.getDocument();
+            HttpRequest.BodyPublisher body;
+            if (file.isNew()) {
+                ByteBuffer mapped;
+                try (FileChannel channel = FileChannel.open(file.getNewMediaFile().toPath(), StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                body = form.withFile(SendDocument.DOCUMENT_FIELD, file.getMediaName(), mapped);
+                uploadedBytes.add(mapped.remaining());
+            } else {
+                form.field(SendDocument.DOCUMENT_FIELD, file.getAttachName());
+                body = form.build();
+            }
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create(methodUrl + SendDocument.PATH))
+                    .timeout(uploadTimeout)
+                    .header("Content-Type", "multipart/form-data; boundary=" + form.boundary)
+                    .POST(body)
+                    .build();
+            return submit(request, document, SendDocument.PATH);
+        } catch (TelegramApiException e) {
+            return CompletableFuture.failedFuture(e);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new TelegramApiRequestException("Unable to send document", e));
+        }
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    long http2Requests() {
+        return http2Requests.sum();
+    }
+
+    /**
+     * @return Попытки открыть TLS-соединение, включая неудачные (для http:// не считаются)
+     */
+    long connections() {
+        return connections.sum();
+    }
+
+    long inFlight() {
+        return inFlight.get();
+    }
+
+    long queued() {
+        return waiting.size();
+    }
+
+    long uploadedBytes() {
+        return uploadedBytes.sum();
+    }
+
+    /**
+     * Выполнение запроса с учетом ограничения одновременных запросов
+     */
+    private <T extends Serializable> CompletableFuture<T> submit(HttpRequest request, PartialBotApiMethod<T> method,
+                                                                 String name) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            inFlight.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                    .whenComplete((response, error) -> {
+                        inFlight.decrementAndGet();
+                        release();
+                        complete(result, response, error, method::deserializeResponse, name);
+                    });
+        };
+        if (permits.tryAcquire()) {
+            start.run();
+            return result;
+        }
+        waiting.add(start);
+        // Разрешение могло освободиться между tryAcquire и add - тогда запускаем ожидающий запрос сами
+        if (permits.tryAcquire()) {
+            startNextOrRelease();
+        }
+        return result;
+    }
+
+    /**
+     * Освободившееся разрешение переходит к следующему запросу в очереди
+     */
+    private void release() {
+        Runnable next = waiting.poll();
+        if (next != null) {
+            next.run();
+        } else {
+            permits.release();
+            // Запрос мог встать в очередь после poll
+            if (!waiting.isEmpty() && permits.tryAcquire()) {
+                startNextOrRelease();
+            }
+        }
+    }
+
+    private void startNextOrRelease() {
+        Runnable next = waiting.poll();
+        if (next != null) {
+            next.run();
+        } else {
+            permits.release();
+        }
+    }
+
+    private <T> void complete(CompletableFuture<T> result, HttpResponse<String> response, Throwable error,
+                              Deserializer<T> deserializer, String name) {
+        if (error != null) {
+            result.completeExceptionally(new TelegramApiRequestException("Unable to execute " + name + " method", error));
+            return;
+        }
+        requests.increment();
+        if (response.version() == HttpClient.Version.HTTP_2) {
+            http2Requests.increment();
+        }
+        try {
+            result.complete(deserializer.apply(response.body()));
+        } catch (TelegramApiRequestException e) {
+            result.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(new TelegramApiRequestException("Unable to deserialize response of " + name, e));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Deserializer<T> {
+        T apply(String body) throws TelegramApiRequestException;
+    }
+
+    /**
+     * Тело multipart/form-data: текстовые поля в памяти, файл - отдельным потоком
+     */
+    private static final class Multipart {
+        final String boundary = "zazin-" + UUID.randomUUID();
+        private final ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+
+        void field(String name, Object value) {
+            if (value == null) {
+                return;
+            }
+            write("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name
+                    + "\"\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\n" + value + "\r\n");
+        }
+
+        HttpRequest.BodyPublisher build() {
+            write("--" + boundary + "--\r\n");
+            return HttpRequest.BodyPublishers.ofByteArray(head.toByteArray());
+        }
+
+        HttpRequest.BodyPublisher withFile(String name, String fileName, ByteBuffer content) {
+            write("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\""
+                    + fileName.replace("\"", "") + "\"\r\nContent-Type: application/octet-stream\r\n\r\n");
+            byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+            return HttpRequest.BodyPublishers.concat(
+                    HttpRequest.BodyPublishers.ofByteArray(head.toByteArray()),
+                    HttpRequest.BodyPublishers.fromPublisher(new BufferPublisher(content), content.remaining()),
+                    HttpRequest.BodyPublishers.ofByteArray(tail));
+        }
+
+        private void write(String text) {
+            head.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Выдача содержимого буфера кусками по запросу подписчика; при повторной
+     * подписке (повтор запроса клиентом) буфер выдается заново с начала
+     */
+    private static final class BufferPublisher implements Flow.Publisher<ByteBuffer> {
+        private final ByteBuffer content;
+
+        BufferPublisher(ByteBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            ByteBuffer source = content.duplicate();
+            AtomicLong demand = new AtomicLong();
+            AtomicInteger drains = new AtomicInteger();
+            // Пишется из cancel() в потоке клиента, читается в потоке выдачи
+            AtomicBoolean finished = new AtomicBoolean();
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    if (n <= 0) {
+                        if (finished.compareAndSet(false, true)) {
+                            subscriber.onError(new IllegalArgumentException("Запрошено " + n + " элементов"));
+                        }
+                        return;
+                    }
+                    demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                    // Выдача только в одном потоке, повторные вызовы из onNext лишь добавляют спрос
+                    if (drains.getAndIncrement() != 0) {
+                        return;
+                    }
+                    do {
+                        while (!finished.get() && demand.get() > 0 && source.hasRemaining()) {
+                            ByteBuffer chunk = source.slice(source.position(), Math.min(UPLOAD_CHUNK, source.remaining()));
+                            source.position(source.position() + chunk.remaining());
+                            demand.decrementAndGet();
+                            subscriber.onNext(chunk);
+                        }
+                        if (!source.hasRemaining() && finished.compareAndSet(false, true)) {
+                            subscriber.onComplete();
+                        }
+                    } while (drains.decrementAndGet() != 0);
+                }
+
+                @Override
+                public void cancel() {
+                    finished.set(true);
+                }
+            });
+        }
+    }
+
+    /**
+     * SSLContext по умолчанию, считающий созданные SSLEngine: HTTP-клиент создает
+     * по одному на каждое новое TLS-соединение
+     */
+    private static SSLContext countingSslContext(LongAdder counter) {
+        SSLContext delegate;
+        try {
+            delegate = SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        SSLContextSpi spi = new SSLContextSpi() {
+            @Override
+            protected void engineInit(KeyManager[] keyManagers, TrustManager[] trustManagers, SecureRandom random) {
+                // Контекст по умолчанию уже инициализирован
+            }
+
+            @Override
+            protected SSLSocketFactory engineGetSocketFactory() {
+                return delegate.getSocketFactory();
+            }
+
+            @Override
+            protected SSLServerSocketFactory engineGetServerSocketFactory() {
+                return delegate.getServerSocketFactory();
+            }
+
+            @Override
+            protected SSLEngine engineCreateSSLEngine() {
+                counter.increment();
+                return delegate.createSSLEngine();
+            }
+
+            @Override
+            protected SSLEngine engineCreateSSLEngine(String host, int port) {
+                counter.increment();
+                return delegate.createSSLEngine(host, port);
+            }
+
+            @Override
+            protected SSLSessionContext engineGetServerSessionContext() {
+                return delegate.getServerSessionContext();
+            }
+
+            @Override
+            protected SSLSessionContext engineGetClientSessionContext() {
+                return delegate.getClientSessionContext();
+            }
+
+            @Override
+            protected SSLParameters engineGetDefaultSSLParameters() {
+                return delegate.getDefaultSSLParameters();
+            }
+
+            @Override
+            protected SSLParameters engineGetSupportedSSLParameters() {
+                return delegate.getSupportedSSLParameters();
+            }
+        };
+        return new SSLContext(spi, delegate.getProvider(), delegate.getProtocol()) {
+        };
+    }
+}
@@ -0,0 +1,353 @@
+package Tutorial;
+
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Рассылка сообщения всем чатам из хранилища сессий по команде администратора.
+ *
+ * <p>Получатели выгружаются из хранилища потоком в файл (8 байт на чат), а затем
+ * читаются из него по порядку, поэтому в памяти не держится список чатов и
+ * после перезапуска порядок получателей тот же. Сообщения уходят через
+ * {@link OutboundQueue} с собственным ограничением скорости (чтобы ответам
+ * в диалогах оставался запас общего лимита) и не более чем {@link #WINDOW}
+ * неотвеченных запросов. Раз в секунду на диск пишется контрольная точка -
+ * номер самого старого неотвеченного получателя, с нее рассылка продолжается
+ * после перезапуска (повторно могут получить сообщение не больше WINDOW чатов).
+ * Чаты, заблокировавшие бота (ответ 403), удаляются из хранилища сессий.
+ *
+ * <p>Файлы рассылки в папке: recipients.bin, message.txt, checkpoint.
+ */
+final class Broadcaster implements AutoCloseable {
+
+    // Сколько запросов рассылки может ждать ответа одновременно
+    static final int WINDOW = 64;
+
+    // Как часто сохраняется контрольная точка
+    private static final long CHECKPOINT_INTERVAL_MS = 1000;
+
+    /**
+     * Отправка сообщения рассылки
+     */
+    @FunctionalInterface
+    interface Sender {
+        CompletableFuture<?> send(long chatId, String text);
+    }
+
+    /**
+     * Состояние рассылки
+     * @param adminChatId Чат администратора, запустившего рассылку
+     * @param total Всего получателей
+     * @param done Сколько получателей обработано (по контрольной точке)
+     * @param sent Доставлено
+     * @param pruned Заблокировали бота и удалены из хранилища
+     * @param failed Не доставлено по другим причинам
+     */
+    record Progress(long adminChatId, long total, long done, long sent, long pruned, long failed) {
+    }
+
+    private final Path recipientsPath;
+    private final Path messagePath;
+    private final Path checkpointPath;
+    private final SessionStore sessions;
+    private final Sender sender;
+    private final long intervalNanos;
+    private final Consumer<Progress> onFinished;
+
+    private final LongAdder sentTotal = new LongAdder();
+    private final LongAdder prunedTotal = new LongAdder();
+
+    // Текущая рассылка (null - рассылки нет)
+    private Thread worker;
+    private volatile Progress progress;
+    private volatile boolean cancelled;
+
+    /**
+     * @param directory Папка для файлов рассылки
+     * @param sessions Хранилище сессий - источник получателей
+     * @param sender Отправка сообщения в чат
+     * @param rate Сообщений рассылки в секунду
+     * @param onFinished Вызывается по окончании рассылки (не после отмены)
+     */
+    Broadcaster(Path directory, SessionStore sessions, Sender sender, double rate,
+                Consumer<Progress> onFinished) throws IOException {
+        Files.createDirectories(directory);
+        this.recipientsPath = directory.resolve("recipients.bin");
+        this.messagePath = directory.resolve("message.txt");
+        this.checkpointPath = directory.resolve("checkpoint");
+        this.sessions = sessions;
+        this.sender = sender;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * Продолжение рассылки, прерванной остановкой бота
+     * @return true если найдена незавершенная рассылка
+     */
+    synchronized boolean resume() throws IOException {
+        if (worker != null || !Files.isRegularFile(checkpointPath)) {
+            return false;
+        }
+        progress = readCheckpoint();
+        String text = Files.readString(messagePath, StandardCharsets.UTF_8);
+        System.out.println("Продолжаем рассылку с получателя " + progress.done() + " из " + progress.total());
+        launch(text);
+        return true;
+    }
+
+    /**
+     * Запуск новой рассылки
+     * @param adminChatId Чат администратора (получит итог)
+     * @param text Текст сообщения
+     * @return Состояние новой рассылки или null, если уже идет другая
+     */
+    synchronized Progress start(long adminChatId, String text) throws IOException {
+        if (worker != null) {
+            return null;
+        }
+
+        // Получатели - потоком из хранилища прямо в файл
+        Path tmp = recipientsPath.resolveSibling(recipientsPath.getFileName() + ".tmp");
+        long[] total = new long[1];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            sessions.forEach((chatId, session, name) -> {
+                try {
+                    out.writeLong(chatId);
+                    total[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, recipientsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.writeString(messagePath, text, StandardCharsets.UTF_8);
+
+        progress = new Progress(adminChatId, total[0], 0, 0, 0, 0);
+        writeCheckpoint(progress);
+        launch(text);
+        return progress;
+    }
+
+    /**
+     * Отмена текущей рассылки с удалением ее файлов
+     * @return true если рассылка шла
+     */
+    synchronized boolean cancel() {
+        if (worker == null) {
+            return false;
+        }
+        cancelled = true;
+        worker.interrupt();
+        return true;
+    }
+
+    /**
+     * @return Состояние текущей рассылки или null
+     */
+    Progress progress() {
+        return progress;
+    }
+
+    long sent() {
+        return sentTotal.sum();
+    }
+
+    long pruned() {
+        return prunedTotal.sum();
+    }
+
+    /**
+     * Остановка рассылки с сохранением контрольной точки (продолжится после запуска)
+     */
+    @Override
+    public void close() {
+        Thread current;
+        synchronized (this) {
+            current = worker;
+        }
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void launch(String text) {
+        cancelled = false;
+        worker = Thread.ofVirtual().name("broadcast").start(() -> run(text));
+    }
+
+    /**
+     * Цикл рассылки: чтение получателей с контрольной точки, отправка с темпом rate
+     * и окном неотвеченных запросов
+     */
+    private void run(String text) {
+        Progress start = progress;
+        long[] counts = {start.sent(), start.pruned(), start.failed()};
+        ArrayDeque<CompletableFuture<?>> window = new ArrayDeque<>(WINDOW);
+        long done = start.done();
+        boolean finished = false;
+
+        try (FileChannel file = FileChannel.open(recipientsPath, StandardOpenOption.READ)) {
+            file.position(done * Long.BYTES);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(file)));
+            long nextSendAt = System.nanoTime();
+            long checkpointAt = System.currentTimeMillis() + CHECKPOINT_INTERVAL_MS;
+            while (true) {
+                long chatId;
+                try {
+                    chatId = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                // Окно заполнено - ждем ответа на самый старый запрос
+                if (window.size() == WINDOW) {
+                    await(window.poll());
+                    done++;
+                }
+
+                long wait = nextSendAt - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                // После долгого ожидания не отправляем пачку подряд
+                nextSendAt = Math.max(nextSendAt, System.nanoTime() - intervalNanos) + intervalNanos;
+
+                window.add(send(chatId, text, counts));
+
+                if (System.currentTimeMillis() >= checkpointAt) {
+                    progress = snapshot(start, done, counts);
+                    writeCheckpoint(progress);
+                    checkpointAt = System.currentTimeMillis() + CHECKPOINT_INTERVAL_MS;
+                }
+            }
+            while (!window.isEmpty()) {
+                await(window.poll());
+                done++;
+            }
+            finished = true;
+        } catch (InterruptedException | ClosedByInterruptException e) {
+            // Остановка бота или отмена: ответы на уже отправленное не ждем,
+            // эти получатели после перезапуска получат сообщение повторно
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        progress = snapshot(start, done, counts);
+        synchronized (this) {
+            worker = null;
+            try {
+                if (finished || cancelled) {
+                    deleteFiles();
+                } else {
+                    writeCheckpoint(progress);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (finished) {
+            System.out.println("Рассылка завершена: " + progress);
+            onFinished.accept(progress);
+            progress = null;
+        } else if (cancelled) {
+            progress = null;
+        }
+    }
+
+    /**
+     * Постановка сообщения в очередь отправки с учетом результата
+     * @return Запрос, завершающийся после учета результата
+     */
+    private CompletableFuture<?> send(long chatId, String text, long[] counts) {
+        return sender.send(chatId, text).handle((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            synchronized (counts) {
+                if (cause == null) {
+                    counts[0]++;
+                    sentTotal.increment();
+                } else if (cause instanceof TelegramApiRequestException requestError
+                        && Integer.valueOf(403).equals(requestError.getErrorCode())) {
+                    // Пользователь заблокировал бота - больше ему не пишем
+                    sessions.remove(chatId);
+                    counts[1]++;
+                    prunedTotal.increment();
+                } else {
+                    counts[2]++;
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Состояние рассылки на текущий момент (счетчики меняются в потоках ответов)
+     */
+    private static Progress snapshot(Progress start, long done, long[] counts) {
+        synchronized (counts) {
+            return new Progress(start.adminChatId(), start.total(), done, counts[0], counts[1], counts[2]);
+        }
+    }
+
+    private static void await(CompletableFuture<?> request) throws InterruptedException {
+        try {
+            request.get();
+        } catch (ExecutionException e) {
+            // Ошибки уже учтены в send
+        }
+    }
+
+    private void writeCheckpoint(Progress state) throws IOException {
+        Path tmp = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(state.adminChatId());
+            out.writeLong(state.total());
+            out.writeLong(state.done());
+            out.writeLong(state.sent());
+            out.writeLong(state.pruned());
+            out.writeLong(state.failed());
+        }
+        Files.move(tmp, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Progress readCheckpoint() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointPath)))) {
+            return new Progress(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+    }
+
+    private void deleteFiles() throws IOException {
+        Files.deleteIfExists(checkpointPath);
+        Files.deleteIfExists(recipientsPath);
+        Files.deleteIfExists(messagePath);
+    }
+}
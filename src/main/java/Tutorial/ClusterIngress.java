@@ -0,0 +1,336 @@
+package Tutorial;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Входная точка кластера: принимает webhook-обновления Telegram и пересылает
+ * каждое экземпляру бота (узлу), выбранному согласованным хэшированием по chatId
+ * ({@link HashRing}). Узлы - обычные экземпляры в режиме webhook с общим
+ * хранилищем сессий ({@link RemoteSessionStore}), поэтому сами состояния не хранят.
+ *
+ * <p>Обновления одного чата пересылаются строго по очереди: следующее уходит только
+ * после ответа узла на предыдущее ({@link UpdateDispatcher}). Поэтому при смене
+ * состава узлов чат, переехавший на другой узел, получит там следующее обновление
+ * уже после того, как старый узел закончил текущее, и диалог не теряется и не
+ * обрабатывается двумя узлами сразу. Если узел недоступен, обновление один раз
+ * отправляется узлу, которому чат принадлежит по текущему кольцу; если и это не
+ * удалось, Telegram получает ошибку и повторит доставку сам. Ошибку Telegram получает
+ * и по таймауту, когда узел, возможно, еще обрабатывает обновление: повторная
+ * доставка уйдет тому же узлу, и он отбросит ее по update_id ({@link RedeliveryGuard}).
+ *
+ * <p>Перед пересылкой обновления проходят тот же {@link UpdateFilter}, что и в боте:
+ * лишние обновления и повторные нажатия кнопок не доходят до узлов, а на отброшенное
+ * нажатие входная точка сразу отвечает answerCallbackQuery в теле webhook-ответа.
+ * Узлы запускаются с CLUSTER_WORKER=true и второй раз обновления не фильтруют.
+ *
+ * <p>Состав узлов меняется без перезапуска: PUT на {@link #NODES_PATH} со списком
+ * адресов узлов по одному в строке (с заголовком {@link #ADMIN_HEADER}).
+ */
+final class ClusterIngress implements AutoCloseable {
+
+    // Путь управления составом узлов
+    static final String NODES_PATH = "/cluster/nodes";
+
+    // Заголовок с токеном администратора для изменения состава узлов
+    static final String ADMIN_HEADER = "X-Cluster-Admin-Token";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final HttpClient client;
+    private final UpdateDispatcher dispatcher = new UpdateDispatcher();
+    private final UpdateFilter filter;
+    private final byte[] secret;
+    private final byte[] adminToken;
+    private final String secretHeader;
+    private final long forwardTimeoutMs;
+
+    // Текущее кольцо; заменяется целиком при смене состава
+    private volatile HashRing ring;
+
+    /**
+     * Ответ узла, который передается Telegram
+     */
+    private record Forwarded(int status, String contentType, byte[] body) {
+    }
+
+    /**
+     * @param port Порт HTTP-сервера
+     * @param path Путь, на который Telegram присылает обновления
+     * @param secret Секретный токен Telegram, обязателен (пересылается узлам, у них должен быть тот же)
+     * @param adminToken Токен для изменения состава узлов (пустая строка - изменение отключено)
+     * @param nodes Адреса webhook узлов, например http://bot-1:8080/webhook
+     * @param forwardTimeoutMs Сколько ждать ответ узла
+     * @param filter Фильтр обновлений до пересылки
+     */
+    ClusterIngress(int port, String path, String secret, String adminToken, List<String> nodes,
+                   long forwardTimeoutMs, UpdateFilter filter) throws IOException {
+        if (secret.isBlank()) {
+            throw new IllegalArgumentException("Секретный токен webhook не задан");
+        }
+        this.filter = filter;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.secretHeader = secret;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+        this.forwardTimeoutMs = forwardTimeoutMs;
+        this.ring = new HashRing(nodes);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(forwardTimeoutMs))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext(path, this::handleUpdate);
+        if (this.adminToken.length > 0) {
+            this.server.createContext(NODES_PATH, this::handleNodes);
+        }
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    void start() {
+        server.start();
+        Thread.ofVirtual().name("ingress-filter-sweeper").start(this::sweepFilter);
+    }
+
+    /**
+     * @return Фактический порт сервера (полезно при запуске на порту 0)
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Замена состава узлов. Обновления, уже отправленные узлам, дорабатываются там;
+     * следующие обновления каждого чата пойдут по новому кольцу.
+     * @param nodes Адреса webhook узлов
+     */
+    void setNodes(List<String> nodes) {
+        ring = new HashRing(nodes);
+        System.out.println("Узлы кластера: " + ring.nodes());
+    }
+
+    /**
+     * @return Текущие адреса узлов
+     */
+    List<String> nodes() {
+        return ring.nodes();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        dispatcher.close();
+    }
+
+    /**
+     * Прием обновления от Telegram и пересылка узлу чата
+     * @param exchange HTTP-запрос и ответ
+     */
+    private void handleUpdate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!WebhookServer.isAuthorized(secret, exchange.getRequestHeaders().getFirst(WebhookServer.SECRET_HEADER))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            byte[] body;
+            Update update;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+                update = MAPPER.readValue(body, Update.class);
+            } catch (IOException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            long chatId = UpdateDispatcher.chatIdOf(update);
+
+            if (filter.admit(update) != UpdateFilter.Verdict.ACCEPT) {
+                shed(exchange, update);
+                return;
+            }
+
+            CompletableFuture<Forwarded> result = new CompletableFuture<>();
+            if (chatId == 0) {
+                // Обновление без чата не зависит от порядка - пересылаем сразу
+                result.complete(forward(chatId, body));
+            } else {
+                dispatcher.dispatch(chatId, () -> {
+                    try {
+                        // Telegram уже получил ошибку и повторит доставку - второй раз не пересылаем
+                        if (!result.isDone()) {
+                            result.complete(forward(chatId, body));
+                        }
+                    } finally {
+                        filter.done(update);
+                    }
+                });
+            }
+
+            Forwarded reply;
+            try {
+                reply = result.get(forwardTimeoutMs * 2, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                result.cancel(false);
+                reply = null;
+            }
+            if (reply == null) {
+                // Telegram повторит доставку; если узел все же получил обновление, повтор он отбросит
+                exchange.sendResponseHeaders(502, -1);
+                return;
+            }
+            if (reply.contentType() != null) {
+                exchange.getResponseHeaders().set("Content-Type", reply.contentType());
+            }
+            exchange.sendResponseHeaders(reply.status(), reply.body().length == 0 ? -1 : reply.body().length);
+            if (reply.body().length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(reply.body());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Периодическое удаление состояния фильтра для неактивных чатов
+     */
+    private void sweepFilter() {
+        try {
+            while (true) {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                filter.sweep();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ответ Telegram на отброшенное обновление: нажатие кнопки сразу подтверждаем
+     * методом в теле webhook-ответа, остальное просто принимаем
+     */
+    private static void shed(HttpExchange exchange, Update update) throws IOException {
+        if (!update.hasCallbackQuery()) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        byte[] json = MAPPER.writeValueAsBytes(Map.of(
+                "method", "answerCallbackQuery", "callback_query_id", update.getCallbackQuery().getId()));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    /**
+     * Синхронная пересылка обновления узлу чата с одним повтором по текущему кольцу
+     * @param chatId ID чата
+     * @param body Тело обновления от Telegram
+     * @return Ответ узла или null, если ни один узел не ответил
+     */
+    private Forwarded forward(long chatId, byte[] body) {
+        String node = ring.nodeFor(chatId);
+        for (int attempt = 0; attempt < 2 && node != null; attempt++) {
+            try {
+                HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node))
+                        .timeout(Duration.ofMillis(forwardTimeoutMs))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+                request.header(WebhookServer.SECRET_HEADER, secretHeader);
+                HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                return new Forwarded(response.statusCode(),
+                        response.headers().firstValue("Content-Type").orElse(null), response.body());
+            } catch (ConnectException | HttpTimeoutException e) {
+                System.err.println("Узел " + node + " не ответил: " + e);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            // Узел мог быть удален из кольца, пока шел запрос, - пробуем текущего владельца чата
+            String current = ring.nodeFor(chatId);
+            node = current != null && !current.equals(node) ? current : null;
+        }
+        return null;
+    }
+
+    /**
+     * Просмотр (GET) и замена (PUT) состава узлов
+     * @param exchange HTTP-запрос и ответ
+     */
+    private void handleNodes(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!WebhookServer.isAuthorized(adminToken, exchange.getRequestHeaders().getFirst(ADMIN_HEADER))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            if ("PUT".equals(exchange.getRequestMethod())) {
+                try (InputStream in = exchange.getRequestBody()) {
+                    setNodes(parseNodes(new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+                }
+            } else if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] list = (String.join("\n", ring.nodes()) + "\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, list.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(list);
+            }
+        }
+    }
+
+    /**
+     * @param text Адреса узлов через перевод строки или запятую
+     * @return Непустые адреса
+     */
+    static List<String> parseNodes(String text) {
+        return Arrays.stream(text.split("[,\\s]+")).filter(node -> !node.isEmpty()).toList();
+    }
+
+    /**
+     * Запуск входной точки по настройкам
+     * @param config Настройки (узлы кластера, порт и путь webhook, лимиты обновлений)
+     * @return Запущенная входная точка
+     */
+    static ClusterIngress start(BotConfig config) throws IOException {
+        ClusterIngress ingress = new ClusterIngress(config.webhookPort, config.webhookPath, config.webhookSecret,
+                config.clusterAdminToken, config.clusterNodes, config.clusterForwardTimeoutMs,
+                new UpdateFilter(config.updateChatRate, config.updateChatBurst));
+        ingress.start();
+        System.out.println("Входная точка кластера слушает порт " + ingress.port() + ", узлы: " + ingress.nodes());
+        return ingress;
+    }
+}
@@ -0,0 +1,445 @@
+package Tutorial;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Компактное хранилище сессий диалога с ключом-примитивом long (chatId).
+ * Данные лежат в параллельных массивах открытой адресации без упаковки ключей
+ * в Long и без вложенных карт: на сессию приходится ключ, упакованная сессия
+ * ({@link Session}), время последнего обращения и ссылка на имя.
+ * Карта разбита на сегменты со своими блокировками, поэтому разные чаты
+ * почти не конкурируют. Сессии, к которым долго не обращались, удаляются по TTL,
+ * а при достижении максимального размера вытесняется самая давняя сессия сегмента.
+ */
+final class CompactSessionStore implements SessionStore {
+
+    // Количество сегментов (степень двойки)
+    private static final int SEGMENTS = 64;
+
+    // Начальная емкость сегмента (степень двойки)
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long idleTtlMs;
+
+    // Момент создания хранилища; время обращения хранится в секундах от него
+    private final long epochMs = System.currentTimeMillis();
+
+    private final LongAdder ttlEvictions = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+
+    // Получатель изменений сессий (журнал), вызывается под блокировкой сегмента
+    private volatile Listener listener;
+
+    /**
+     * Получатель изменений сессий. Вызовы для одного chatId приходят в порядке изменений.
+     */
+    interface Listener {
+
+        /**
+         * Сессия создана или изменена
+         * @param chatId ID чата
+         * @param session Упакованная сессия после изменения
+         * @param name Имя пользователя или null
+         */
+        void onPut(long chatId, long session, String name);
+
+        /**
+         * Сессия удалена (явно, по TTL или из-за ограничения размера)
+         * @param chatId ID чата
+         */
+        void onRemove(long chatId);
+    }
+
+    /**
+     * @param maxSize Максимальное количество сессий
+     * @param idleTtlMs Через сколько миллисекунд без обращений сессия удаляется
+     */
+    CompactSessionStore(int maxSize, long idleTtlMs) {
+        this.idleTtlMs = idleTtlMs;
+        int segmentMax = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentMax);
+        }
+    }
+
+    /**
+     * Получение сессии с отметкой обращения
+     * @param chatId ID чата
+     * @return Упакованная сессия или {@link Session#EMPTY}, если ее нет
+     */
+    @Override
+    public long get(long chatId) {
+        return segmentFor(chatId).get(chatId, now());
+    }
+
+    /**
+     * Сохранение сессии
+     * @param chatId ID чата (не 0)
+     * @param session Упакованная сессия
+     */
+    @Override
+    public void put(long chatId, long session) {
+        segmentFor(chatId).put(chatId, session, now());
+    }
+
+    /**
+     * @param chatId ID чата
+     * @return Имя пользователя или null
+     */
+    @Override
+    public String getName(long chatId) {
+        return segmentFor(chatId).getName(chatId);
+    }
+
+    /**
+     * Сохранение имени пользователя (сессия создается, если ее не было)
+     * @param chatId ID чата (не 0)
+     * @param name Имя
+     */
+    @Override
+    public void putName(long chatId, String name) {
+        segmentFor(chatId).putName(chatId, name, now());
+    }
+
+    /**
+     * Восстановление сессии целиком (при загрузке с диска)
+     * @param chatId ID чата (не 0)
+     * @param session Упакованная сессия
+     * @param name Имя или null
+     */
+    @Override
+    public void restore(long chatId, long session, String name) {
+        segmentFor(chatId).restore(chatId, session, name, now());
+    }
+
+    /**
+     * Удаление сессии
+     * @param chatId ID чата
+     */
+    @Override
+    public void remove(long chatId) {
+        segmentFor(chatId).remove(chatId);
+    }
+
+    /**
+     * Удаление всех сессий, к которым не обращались дольше TTL
+     */
+    @Override
+    public void evictExpired() {
+        int deadline = now() - (int) (idleTtlMs / 1000);
+        for (Segment segment : segments) {
+            segment.evictOlderThan(deadline);
+        }
+    }
+
+    /**
+     * Обход всех сессий; каждый сегмент обходится под своей блокировкой
+     * @param visitor Получатель сессий
+     */
+    @Override
+    public void forEach(Visitor visitor) {
+        for (Segment segment : segments) {
+            segment.forEach(visitor);
+        }
+    }
+
+    /**
+     * Подключение получателя изменений
+     * @param listener Получатель или null
+     */
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return Количество сессий
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Оценка памяти под таблицы хранилища в байтах (без самих строк имен)
+     */
+    @Override
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Количество сессий, удаленных по TTL
+     */
+    @Override
+    public long ttlEvictions() {
+        return ttlEvictions.sum();
+    }
+
+    /**
+     * @return Количество сессий, вытесненных из-за ограничения размера
+     */
+    @Override
+    public long capacityEvictions() {
+        return capacityEvictions.sum();
+    }
+
+    private int now() {
+        return (int) ((System.currentTimeMillis() - epochMs) / 1000);
+    }
+
+    private Segment segmentFor(long chatId) {
+        return segments[(int) (mix(chatId) >>> 58) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Перемешивание битов ключа (финализатор MurmurHash3)
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Сегмент: хэш-таблица с линейным пробированием. Ключ 0 означает пустую ячейку.
+     */
+    private final class Segment {
+
+        private final int maxSize;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private long[] sessions = new long[INITIAL_CAPACITY];
+        private int[] touched = new int[INITIAL_CAPACITY];
+        private String[] names = new String[INITIAL_CAPACITY];
+        private int size;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized long get(long chatId, int now) {
+            int slot = find(chatId);
+            if (slot < 0) {
+                return Session.EMPTY;
+            }
+            touched[slot] = now;
+            return sessions[slot];
+        }
+
+        synchronized void put(long chatId, long session, int now) {
+            int slot = insert(chatId, now);
+            sessions[slot] = session;
+            notifyPut(slot);
+        }
+
+        synchronized String getName(long chatId) {
+            int slot = find(chatId);
+            return slot < 0 ? null : names[slot];
+        }
+
+        synchronized void putName(long chatId, String name, int now) {
+            int slot = insert(chatId, now);
+            names[slot] = name;
+            notifyPut(slot);
+        }
+
+        synchronized void restore(long chatId, long session, String name, int now) {
+            int slot = insert(chatId, now);
+            sessions[slot] = session;
+            names[slot] = name;
+            notifyPut(slot);
+        }
+
+        synchronized void forEach(Visitor visitor) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    visitor.visit(keys[slot], sessions[slot], names[slot]);
+                }
+            }
+        }
+
+        private void notifyPut(int slot) {
+            Listener current = listener;
+            if (current != null) {
+                current.onPut(keys[slot], sessions[slot], names[slot]);
+            }
+        }
+
+        synchronized void remove(long chatId) {
+            int slot = find(chatId);
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long estimatedBytes() {
+            // long ключ + long сессия + int время + сжатая ссылка на имя
+            return (long) keys.length * (8 + 8 + 4 + 4);
+        }
+
+        synchronized void evictOlderThan(int deadline) {
+            ttlEvictions.add(deleteOlderThan(deadline));
+        }
+
+        /**
+         * Удаление всех сессий с обращением раньше указанного момента
+         * @return Количество удаленных сессий
+         */
+        private int deleteOlderThan(int deadline) {
+            int deleted = 0;
+            int slot = 0;
+            while (slot < keys.length) {
+                if (keys[slot] != 0 && touched[slot] < deadline) {
+                    // После удаления в ячейку может сдвинуться другой ключ - проверяем ее снова
+                    delete(slot);
+                    deleted++;
+                } else {
+                    slot++;
+                }
+            }
+            return deleted;
+        }
+
+        /**
+         * Поиск ячейки с ключом
+         * @return Номер ячейки или -1
+         */
+        private int find(long chatId) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(chatId) & mask;
+            while (true) {
+                long key = keys[slot];
+                if (key == chatId) {
+                    return slot;
+                }
+                if (key == 0) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        /**
+         * Поиск или создание ячейки для ключа с отметкой обращения
+         * @return Номер ячейки
+         */
+        private int insert(long chatId, int now) {
+            int slot = find(chatId);
+            if (slot >= 0) {
+                touched[slot] = now;
+                return slot;
+            }
+
+            if (size >= maxSize) {
+                evictOldest();
+            }
+            // Заполненность не выше 1/2, чтобы цепочки пробирования оставались короткими
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+
+            int mask = keys.length - 1;
+            slot = (int) mix(chatId) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = chatId;
+            sessions[slot] = Session.EMPTY;
+            names[slot] = null;
+            touched[slot] = now;
+            size++;
+            return slot;
+        }
+
+        /**
+         * Вытеснение сессий с самым давним обращением. Время хранится в секундах,
+         * поэтому уходят сразу все сессии самой давней секунды, и полный сегмент
+         * не сканируется заново на каждой вставке.
+         */
+        private void evictOldest() {
+            int oldest = Integer.MAX_VALUE;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0 && touched[slot] < oldest) {
+                    oldest = touched[slot];
+                }
+            }
+            if (oldest != Integer.MAX_VALUE) {
+                capacityEvictions.add(deleteOlderThan(oldest + 1));
+            }
+        }
+
+        /**
+         * Удаление со сдвигом следующих ключей цепочки назад (без маркеров удаления)
+         */
+        private void delete(int slot) {
+            Listener current = listener;
+            if (current != null) {
+                current.onRemove(keys[slot]);
+            }
+
+            int mask = keys.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (keys[next] != 0) {
+                int home = (int) mix(keys[next]) & mask;
+                // Ключ можно перенести в дыру, если его домашняя ячейка не лежит между дырой и им
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    sessions[hole] = sessions[next];
+                    touched[hole] = touched[next];
+                    names[hole] = names[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[hole] = 0;
+            sessions[hole] = Session.EMPTY;
+            touched[hole] = 0;
+            names[hole] = null;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            long[] oldSessions = sessions;
+            int[] oldTouched = touched;
+            String[] oldNames = names;
+
+            keys = new long[capacity];
+            sessions = new long[capacity];
+            touched = new int[capacity];
+            names = new String[capacity];
+
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0) {
+                    continue;
+                }
+                int slot = (int) mix(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                sessions[slot] = oldSessions[i];
+                touched[slot] = oldTouched[i];
+                names[slot] = oldNames[i];
+            }
+        }
+    }
+}
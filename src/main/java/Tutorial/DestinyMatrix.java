@@ -0,0 +1,165 @@
+package Tutorial;
+
+import java.time.YearMonth;
+
+/**
+ * Матрица судьбы по дате рождения: все позиции для каждой даты диапазона
+ * считаются один раз при старте и хранятся в одном массиве byte.
+ * Строка таблицы адресуется упакованной датой из {@link InputParser},
+ * поэтому любая позиция матрицы достается одним чтением из массива.
+ */
+final class DestinyMatrix {
+
+    // Личные позиции: день, месяц, год
+    static final int DAY = 0;
+    static final int MONTH = 1;
+    static final int YEAR = 2;
+    // Нижняя точка (сумма дня, месяца и года)
+    static final int BOTTOM = 3;
+    // Центр матрицы (зона комфорта)
+    static final int CENTER = 4;
+    // Родовые углы между личными позициями
+    static final int CORNER_DAY_MONTH = 5;
+    static final int CORNER_MONTH_YEAR = 6;
+    static final int CORNER_YEAR_BOTTOM = 7;
+    static final int CORNER_BOTTOM_DAY = 8;
+    // Кармический хвост (вместе с нижней точкой)
+    static final int KARMIC_TAIL_1 = 9;
+    static final int KARMIC_TAIL_2 = 10;
+    // Линии неба и земли и предназначение
+    static final int SKY = 11;
+    static final int EARTH = 12;
+    static final int PURPOSE = 13;
+
+    // Количество позиций матрицы
+    static final int POSITIONS = 14;
+
+    // Старший аркан
+    private static final int MAX_ARCANUM = 22;
+
+    // Строка таблицы занимает 16 байт, чтобы смещение считалось сдвигом
+    private static final int ROW_SHIFT = 4;
+
+    private final int minYear;
+    private final int maxYear;
+    private final byte[] table;
+
+    /**
+     * Построение таблицы для всех дат диапазона
+     * @param minYear Первый год диапазона
+     * @param maxYear Последний год диапазона (включительно)
+     */
+    DestinyMatrix(int minYear, int maxYear) {
+        if (minYear < 1 || maxYear < minYear) {
+            throw new IllegalArgumentException("Некорректный диапазон годов: " + minYear + "-" + maxYear);
+        }
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.table = new byte[(maxYear - minYear + 1) << (9 + ROW_SHIFT)];
+
+        byte[] row = new byte[POSITIONS];
+        for (int year = minYear; year <= maxYear; year++) {
+            for (int month = 1; month <= 12; month++) {
+                int days = YearMonth.of(year, month).lengthOfMonth();
+                for (int day = 1; day <= days; day++) {
+                    compute(day, month, year, row);
+                    System.arraycopy(row, 0, table, offset(InputParser.pack(day, month, year)), POSITIONS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Позиция матрицы для даты рождения
+     * @param date Дата, упакованная {@link InputParser}
+     * @param position Номер позиции ({@link #DAY}, {@link #CENTER} и т.д.)
+     * @return Номер аркана (1-22)
+     */
+    int get(int date, int position) {
+        int year = InputParser.year(date);
+        if (year >= minYear && year <= maxYear) {
+            return table[offset(date) + position];
+        }
+        // Дата вне таблицы - считаем напрямую
+        byte[] row = new byte[POSITIONS];
+        compute(InputParser.day(date), InputParser.month(date), year, row);
+        return row[position];
+    }
+
+    /**
+     * Все позиции матрицы для даты рождения
+     * @param date Дата, упакованная {@link InputParser}
+     * @return Новый массив из {@link #POSITIONS} арканов
+     */
+    byte[] row(int date) {
+        byte[] row = new byte[POSITIONS];
+        int year = InputParser.year(date);
+        if (year >= minYear && year <= maxYear) {
+            System.arraycopy(table, offset(date), row, 0, POSITIONS);
+        } else {
+            compute(InputParser.day(date), InputParser.month(date), year, row);
+        }
+        return row;
+    }
+
+    /**
+     * Смещение строки даты в таблице
+     */
+    private int offset(int date) {
+        return (date - (minYear << 9)) << ROW_SHIFT;
+    }
+
+    /**
+     * Расчет всех позиций матрицы по дате рождения
+     * @param day День (1-31)
+     * @param month Месяц (1-12)
+     * @param year Год
+     * @param row Массив для результата (не короче {@link #POSITIONS})
+     */
+    static void compute(int day, int month, int year, byte[] row) {
+        int a = reduce(day);
+        int b = reduce(month);
+        int c = reduce(digitSum(year));
+        int d = reduce(a + b + c);
+        int e = reduce(a + b + c + d);
+        int tail1 = reduce(d + e);
+        int sky = reduce(b + d);
+        int earth = reduce(a + c);
+
+        row[DAY] = (byte) a;
+        row[MONTH] = (byte) b;
+        row[YEAR] = (byte) c;
+        row[BOTTOM] = (byte) d;
+        row[CENTER] = (byte) e;
+        row[CORNER_DAY_MONTH] = (byte) reduce(a + b);
+        row[CORNER_MONTH_YEAR] = (byte) reduce(b + c);
+        row[CORNER_YEAR_BOTTOM] = (byte) reduce(c + d);
+        row[CORNER_BOTTOM_DAY] = (byte) reduce(d + a);
+        row[KARMIC_TAIL_1] = (byte) tail1;
+        row[KARMIC_TAIL_2] = (byte) reduce(d + tail1);
+        row[SKY] = (byte) sky;
+        row[EARTH] = (byte) earth;
+        row[PURPOSE] = (byte) reduce(sky + earth);
+    }
+
+    /**
+     * Приведение числа к аркану: пока число больше 22, суммируем его цифры
+     * @param n Положительное число
+     * @return Номер аркана (1-22)
+     */
+    static int reduce(int n) {
+        while (n > MAX_ARCANUM) {
+            n = digitSum(n);
+        }
+        return n;
+    }
+
+    private static int digitSum(int n) {
+        int sum = 0;
+        while (n > 0) {
+            sum += n % 10;
+            n /= 10;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,165 @@
+package Tutorial;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.util.Map;
+
+/**
+ * Таблица переходов диалога: обработчик для каждой пары (состояние, ввод).
+ * Таблица строится один раз при старте и хранится плоским массивом с индексом
+ * state.ordinal() * число вводов + input.ordinal(), поэтому выбор обработчика -
+ * одно чтение из массива без сравнения строк и цепочек условий.
+ * Новые сценарии добавляются строками таблицы (см. {@link Builder}), а не ветками в коде.
+ */
+final class DialogFlow {
+
+    /**
+     * Вид ввода пользователя. Для кнопок данные callback - порядковый номер ввода
+     * (одна-две цифры вместо строки), поэтому новые значения добавляются только в конец.
+     */
+    enum Input {
+        // Произвольный текст
+        TEXT(false),
+        // Команда /start
+        START(false),
+        // Команда администратора (/broadcast...)
+        ADMIN_COMMAND(false),
+        GENDER_MALE(true),
+        GENDER_FEMALE(true),
+        YES(true),
+        NO(true),
+        // Кнопка "Прогноз на год"
+        FORECAST(true);
+
+        final boolean button;
+        // Данные callback кнопки (null для текстового ввода)
+        final String callbackData;
+
+        Input(boolean button) {
+            this.button = button;
+            this.callbackData = button ? String.valueOf(ordinal()) : null;
+        }
+    }
+
+    /**
+     * Обработчик шага диалога
+     */
+    @FunctionalInterface
+    interface Step {
+        /**
+         * @param chatId ID чата
+         * @param text Текст сообщения (null для нажатия кнопки)
+         * @param message Ответное сообщение (не отправляется, если текст не задан)
+         */
+        void handle(long chatId, String text, SendMessage message);
+    }
+
+    private static final Input[] INPUTS = Input.values();
+
+    // Ввод по номеру из данных callback (null - номер не кнопки)
+    private static final Input[] BY_CODE = new Input[INPUTS.length];
+
+    // Данные кнопок из клавиатур, отправленных до перехода на номера:
+    // такие сообщения могли остаться в чатах с незавершенным диалогом
+    private static final Map<String, Input> LEGACY_CODES = Map.of(
+            "gender_male", Input.GENDER_MALE,
+            "gender_female", Input.GENDER_FEMALE,
+            "confirm_yes", Input.YES,
+            "confirm_no", Input.NO);
+
+    static {
+        for (Input input : INPUTS) {
+            if (input.button) {
+                BY_CODE[input.ordinal()] = input;
+            }
+        }
+    }
+
+    private final Step[] table;
+
+    private DialogFlow(Step[] table) {
+        this.table = table;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Вызов обработчика для состояния и ввода
+     * @param state Текущее состояние диалога
+     * @param input Вид ввода
+     * @param chatId ID чата
+     * @param text Текст сообщения (null для нажатия кнопки)
+     * @param message Ответное сообщение
+     * @return false если для этой пары нет обработчика (ввод игнорируется)
+     */
+    boolean dispatch(UserState state, Input input, long chatId, String text, SendMessage message) {
+        Step step = table[state.ordinal() * INPUTS.length + input.ordinal()];
+        if (step == null) {
+            return false;
+        }
+        step.handle(chatId, text, message);
+        return true;
+    }
+
+    /**
+     * Разбор данных нажатой кнопки
+     * @param data Данные callback
+     * @return Ввод или null для неизвестных данных
+     */
+    static Input buttonInput(String data) {
+        if (data == null || data.isEmpty() || data.length() > 2) {
+            return data == null ? null : LEGACY_CODES.get(data);
+        }
+        int code = 0;
+        for (int i = 0; i < data.length(); i++) {
+            int digit = data.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            code = code * 10 + digit;
+        }
+        return code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * Построение таблицы переходов
+     */
+    static final class Builder {
+        private final Step[] table = new Step[UserState.values().length * INPUTS.length];
+        private final Step[] anyState = new Step[INPUTS.length];
+
+        private Builder() {
+        }
+
+        /**
+         * Обработчик ввода в конкретном состоянии
+         */
+        Builder on(UserState state, Input input, Step step) {
+            table[state.ordinal() * INPUTS.length + input.ordinal()] = step;
+            return this;
+        }
+
+        /**
+         * Обработчик ввода в любом состоянии, для которого нет своего обработчика
+         */
+        Builder onAnyState(Input input, Step step) {
+            anyState[input.ordinal()] = step;
+            return this;
+        }
+
+        /**
+         * @return Таблица, в которой обработчики "в любом состоянии" уже подставлены в пустые ячейки
+         */
+        DialogFlow build() {
+            Step[] cells = table.clone();
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] == null) {
+                    cells[i] = anyState[i % INPUTS.length];
+                }
+            }
+            return new DialogFlow(cells);
+        }
+    }
+}
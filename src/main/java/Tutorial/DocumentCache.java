@@ -0,0 +1,133 @@
+package Tutorial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш file_id документов, уже загруженных в Telegram.
+ * Первая отправка файла загружает его целиком, Telegram возвращает file_id,
+ * и все последующие отправки ссылаются на этот идентификатор без повторной загрузки.
+ * Индекс хранится на диске и привязан к хэшу содержимого файла, поэтому
+ * переживает перезапуск и сам становится неактуальным при замене PDF.
+ */
+class DocumentCache {
+
+    // Файл индекса по умолчанию (строки вида sha256=file_id)
+    static final String DEFAULT_INDEX_FILE = "file_ids.properties";
+
+    private final Path indexPath;
+
+    // Хэш содержимого -> file_id в Telegram
+    private final Map<String, String> fileIds = new ConcurrentHashMap<>();
+
+    /**
+     * @param indexPath Путь к файлу индекса на диске
+     */
+    DocumentCache(Path indexPath) {
+        this.indexPath = indexPath;
+        load();
+    }
+
+    /**
+     * Получение сохраненного file_id для содержимого файла
+     * @param sha256 Хэш содержимого файла
+     * @return file_id или null, если файл еще не загружался
+     */
+    String getFileId(String sha256) {
+        return fileIds.get(sha256);
+    }
+
+    /**
+     * Запоминание file_id, который Telegram вернул после загрузки файла
+     * @param sha256 Хэш содержимого загруженного файла
+     * @param fileId Идентификатор файла в Telegram
+     */
+    void put(String sha256, String fileId) throws IOException {
+        if (fileId == null || fileId.isEmpty()) {
+            return;
+        }
+        if (!fileId.equals(fileIds.put(sha256, fileId))) {
+            save();
+        }
+    }
+
+    /**
+     * Удаление file_id, который Telegram перестал принимать (например, после смены токена)
+     * @param sha256 Хэш содержимого файла
+     */
+    void invalidate(String sha256) throws IOException {
+        if (fileIds.remove(sha256) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Подсчет SHA-256 содержимого файла
+     * @param path Путь к файлу
+     * @return Хэш в шестнадцатеричном виде
+     */
+    static String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Загрузка индекса с диска (отсутствующий или битый файл - пустой кэш)
+     */
+    private void load() {
+        if (!Files.isRegularFile(indexPath)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (String hash : properties.stringPropertyNames()) {
+            fileIds.put(hash, properties.getProperty(hash));
+        }
+    }
+
+    /**
+     * Сохранение индекса на диск через временный файл, чтобы не оставить его обрезанным
+     */
+    private synchronized void save() throws IOException {
+        Path absolute = indexPath.toAbsolutePath();
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            // Сортируем ключи, чтобы файл не менялся от порядка вставки
+            for (Map.Entry<String, String> entry : new TreeMap<>(fileIds).entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        }
+        Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
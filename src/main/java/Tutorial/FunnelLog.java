@@ -0,0 +1,247 @@
+package Tutorial;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Журнал событий воронки диалога для аналитики.
+ * Обработчики публикуют события фиксированного размера в кольцевой буфер без
+ * блокировок (при переполнении событие отбрасывается, обработчик не ждет),
+ * фоновый поток пачками дописывает их в сжатые файлы, по одному на день (UTC).
+ *
+ * <p>Каждая пачка - отдельный gzip-член в конце файла, поэтому файл остается
+ * читаемым после падения процесса. Событие: [long chatId][long время, мс]
+ * [byte тип][byte из состояния][byte в состояние][byte аркан] - {@link #EVENT_SIZE} байт.
+ */
+final class FunnelLog implements AutoCloseable {
+
+    static final int EVENT_SIZE = 8 + 8 + 4;
+
+    // Типы событий
+    static final byte TYPE_TRANSITION = 1;
+    static final byte TYPE_SERVICES_ACCEPTED = 2;
+    static final byte TYPE_SERVICES_DECLINED = 3;
+
+    // Файлы журнала: funnel-ГГГГ-ММ-ДД.bin.gz
+    static final String FILE_PREFIX = "funnel-";
+    static final String FILE_SUFFIX = ".bin.gz";
+
+    // Как часто фоновый поток сбрасывает события на диск
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    /**
+     * Событие воронки
+     * @param arcanum Аркан дня рождения (0 - дата еще не введена)
+     */
+    record Event(long chatId, long timeMillis, byte type, UserState from, UserState to, int arcanum) {
+    }
+
+    private final Path directory;
+    private final int mask;
+
+    // Слот события: chatId, время, упакованные тип/состояния/аркан
+    private final long[] slots;
+    // Номер события, записанного в слот (публикация для читателя)
+    private final AtomicLongArray published;
+
+    // Следующий свободный номер события и первый непрочитанный
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * @param directory Папка для файлов журнала
+     * @param capacity Размер буфера в событиях (округляется вверх до степени двойки)
+     */
+    FunnelLog(Path directory, int capacity) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.slots = new long[size * 3];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.writer = new Thread(this::writeLoop, "funnel-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Публикация события без ожидания
+     * @param chatId ID чата
+     * @param type Тип события
+     * @param from Состояние до события
+     * @param to Состояние после события
+     * @param arcanum Аркан дня рождения или 0
+     */
+    void publish(long chatId, byte type, UserState from, UserState to, int arcanum) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head > mask) {
+                // Буфер полон: аналитика не должна тормозить обработку
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        slots[slot * 3] = chatId;
+        slots[slot * 3 + 1] = System.currentTimeMillis();
+        slots[slot * 3 + 2] = (type & 0xFF) | (from.ordinal() << 8) | (to.ordinal() << 16) | ((long) arcanum << 24);
+        published.setRelease(slot, sequence);
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    long written() {
+        return written.sum();
+    }
+
+    /**
+     * Остановка фонового потока с записью всех опубликованных событий
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Цикл фонового потока: раз в интервал сбрасываем накопленные события
+     */
+    private void writeLoop() {
+        ByteBuffer batch = ByteBuffer.allocate((mask + 1) * EVENT_SIZE);
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+            flush(batch);
+        }
+        flush(batch);
+    }
+
+    /**
+     * Перенос опубликованных событий из буфера в файлы
+     */
+    private void flush(ByteBuffer batch) {
+        long day = -1;
+        long sequence = head;
+        while (true) {
+            int slot = (int) (sequence & mask);
+            if (published.getAcquire(slot) != sequence) {
+                break;
+            }
+            long timeMillis = slots[slot * 3 + 1];
+            long eventDay = Math.floorDiv(timeMillis, TimeUnit.DAYS.toMillis(1));
+            if (day >= 0 && (eventDay != day || batch.remaining() < EVENT_SIZE)) {
+                // События следующего дня - в следующий файл; полная пачка - на диск
+                write(day, batch);
+            }
+            day = eventDay;
+            batch.putLong(slots[slot * 3]);
+            batch.putLong(timeMillis);
+            long packed = slots[slot * 3 + 2];
+            batch.put((byte) packed);
+            batch.put((byte) (packed >>> 8));
+            batch.put((byte) (packed >>> 16));
+            batch.put((byte) (packed >>> 24));
+            sequence++;
+            // Слот свободен для следующих событий
+            head = sequence;
+        }
+        if (day >= 0) {
+            write(day, batch);
+        }
+    }
+
+    /**
+     * Дозапись пачки событий в файл дня отдельным gzip-членом
+     */
+    private void write(long epochDay, ByteBuffer batch) {
+        int events = batch.position() / EVENT_SIZE;
+        Path file = directory.resolve(FILE_PREFIX + LocalDate.ofEpochDay(epochDay) + FILE_SUFFIX);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE))) {
+            out.write(batch.array(), 0, batch.position());
+            written.add(events);
+        } catch (IOException e) {
+            dropped.add(events);
+            e.printStackTrace();
+        }
+        batch.clear();
+    }
+
+    /**
+     * Чтение всех событий файла журнала
+     * @param file Файл funnel-*.bin.gz
+     * @param consumer Получатель событий
+     */
+    static void read(Path file, Consumer<Event> consumer) throws IOException {
+        UserState[] states = UserState.values();
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw)))) {
+            while (true) {
+                long chatId;
+                try {
+                    chatId = in.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                long timeMillis = in.readLong();
+                byte type = in.readByte();
+                UserState from = states[in.readUnsignedByte()];
+                UserState to = states[in.readUnsignedByte()];
+                int arcanum = in.readUnsignedByte();
+                consumer.accept(new Event(chatId, timeMillis, type, from, to, arcanum));
+            }
+        } catch (EOFException | ZipException e) {
+            // Последняя пачка недописана (падение процесса): поток обрывается (EOFException)
+            // или gzip не сходится по длине и контрольной сумме (ZipException) - читаем, что успели
+            System.err.println("Файл " + file + " обрезан, прочитаны только полные события");
+        }
+    }
+
+    /**
+     * @param timeMillis Время события
+     * @return Дата события (UTC)
+     */
+    static LocalDate day(long timeMillis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,118 @@
+package Tutorial;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Отчет по воронке диалога из файлов {@link FunnelLog}: по дням - сколько чатов
+ * дошло до каждого состояния и согласилось на описание услуг, по арканам -
+ * сколько получило PDF и сколько затем нажало "Да".
+ *
+ * <p>Запуск: java -cp Zazin_Bot.jar Tutorial.FunnelReport [папка журнала]
+ */
+public final class FunnelReport {
+
+    // Шаги воронки в порядке диалога
+    private static final UserState[] STEPS = {
+            UserState.WAITING_FOR_GENDER, UserState.WAITING_FOR_NAME, UserState.CONFIRM_NAME,
+            UserState.WAITING_FOR_BIRTHDATE, UserState.CONFIRM_BIRTHDATE, UserState.WAITING_FOR_MORE};
+
+    /**
+     * Чаты одного дня или аркана: дошедшие до каждого состояния и ответившие на предложение услуг
+     */
+    private static final class Funnel {
+        final List<Set<Long>> reached = new ArrayList<>();
+        final Set<Long> accepted = new HashSet<>();
+        final Set<Long> declined = new HashSet<>();
+
+        Funnel() {
+            for (int i = 0; i < UserState.values().length; i++) {
+                reached.add(new HashSet<>());
+            }
+        }
+
+        int reached(UserState state) {
+            return reached.get(state.ordinal()).size();
+        }
+    }
+
+    private FunnelReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "funnel");
+
+        Map<LocalDate, Funnel> byDay = new TreeMap<>();
+        Map<Integer, Funnel> byArcanum = new TreeMap<>();
+        long events = 0;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                FunnelLog.FILE_PREFIX + "*" + FunnelLog.FILE_SUFFIX)) {
+            for (Path file : files) {
+                long[] count = new long[1];
+                FunnelLog.read(file, event -> {
+                    count[0]++;
+                    add(byDay.computeIfAbsent(FunnelLog.day(event.timeMillis()), day -> new Funnel()), event);
+                    if (event.arcanum() > 0) {
+                        add(byArcanum.computeIfAbsent(event.arcanum(), arcanum -> new Funnel()), event);
+                    }
+                });
+                events += count[0];
+            }
+        }
+        System.out.println("Событий: " + events);
+
+        System.out.println();
+        System.out.println("По дням: чатов на шаге (доля от выбора пола), согласились на описание услуг");
+        StringBuilder header = new StringBuilder(String.format("%-12s", "день"));
+        for (UserState step : STEPS) {
+            header.append(String.format(" %22s", step.name().toLowerCase()));
+        }
+        System.out.println(header.append(String.format(" %16s", "услуги: да")));
+        for (Map.Entry<LocalDate, Funnel> entry : byDay.entrySet()) {
+            Funnel funnel = entry.getValue();
+            int started = funnel.reached(STEPS[0]);
+            StringBuilder line = new StringBuilder(String.format("%-12s", entry.getKey()));
+            for (UserState step : STEPS) {
+                int reached = funnel.reached(step);
+                line.append(String.format(" %14d (%5.1f%%)", reached, percent(reached, started)));
+            }
+            System.out.println(line.append(String.format(" %8d (%5.1f%%)", funnel.accepted.size(),
+                    percent(funnel.accepted.size(), funnel.reached(UserState.WAITING_FOR_MORE)))));
+        }
+
+        System.out.println();
+        System.out.println("По арканам: получили PDF, ответили \"Да\" и \"Нет\" на предложение услуг");
+        System.out.println(String.format("%-8s %12s %18s %12s", "аркан", "PDF", "да", "нет"));
+        for (Map.Entry<Integer, Funnel> entry : byArcanum.entrySet()) {
+            Funnel funnel = entry.getValue();
+            int received = funnel.reached(UserState.WAITING_FOR_MORE);
+            System.out.println(String.format("%-8d %12d %10d (%5.1f%%) %12d", entry.getKey(), received,
+                    funnel.accepted.size(), percent(funnel.accepted.size(), received), funnel.declined.size()));
+        }
+    }
+
+    private static void add(Funnel funnel, FunnelLog.Event event) {
+        switch (event.type()) {
+            case FunnelLog.TYPE_TRANSITION -> funnel.reached.get(event.to().ordinal()).add(event.chatId());
+            case FunnelLog.TYPE_SERVICES_ACCEPTED -> funnel.accepted.add(event.chatId());
+            case FunnelLog.TYPE_SERVICES_DECLINED -> funnel.declined.add(event.chatId());
+            default -> {
+                // Неизвестный тип из более новой версии бота
+            }
+        }
+    }
+
+    private static double percent(int part, int total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+}
@@ -0,0 +1,9 @@
+package Tutorial;
+
+/**
+ * Пол пользователя
+ */
+enum Gender {
+    MALE,
+    FEMALE
+}
@@ -0,0 +1,97 @@
+package Tutorial;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Кольцо согласованного хэширования: chatId - экземпляр бота.
+ * Каждый узел занимает на кольце {@link #REPLICAS} точек, чат принадлежит узлу
+ * первой точки не меньше хэша chatId. При добавлении или удалении узла
+ * переезжает только около 1/N чатов, остальные остаются на своих узлах.
+ * Кольцо неизменяемо: при смене состава строится новое, поэтому чтение
+ * не требует блокировок.
+ */
+final class HashRing {
+
+    // Точек на узел: чем больше, тем равномернее распределение чатов
+    static final int REPLICAS = 160;
+
+    private final List<String> nodes;
+    // Хэши точек по возрастанию и узлы этих точек
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * @param nodes Узлы (повторы игнорируются)
+     */
+    HashRing(Collection<String> nodes) {
+        this.nodes = List.copyOf(new LinkedHashSet<>(nodes));
+
+        long[][] entries = new long[this.nodes.size() * REPLICAS][];
+        int count = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            byte[] name = this.nodes.get(node).getBytes(StandardCharsets.UTF_8);
+            for (int replica = 0; replica < REPLICAS; replica++) {
+                entries[count++] = new long[]{pointHash(name, replica), node};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+        points = new long[count];
+        owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = entries[i][0];
+            owners[i] = this.nodes.get((int) entries[i][1]);
+        }
+    }
+
+    /**
+     * @param chatId ID чата
+     * @return Узел, которому принадлежит чат, или null, если узлов нет
+     */
+    String nodeFor(long chatId) {
+        if (points.length == 0) {
+            return null;
+        }
+        int i = Arrays.binarySearch(points, mix(chatId));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        // После последней точки кольцо замыкается на первую
+        return owners[i == points.length ? 0 : i];
+    }
+
+    /**
+     * @return Узлы кольца в порядке добавления
+     */
+    List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * Хэш точки узла: FNV-1a имени и номера точки с перемешиванием
+     */
+    private static long pointHash(byte[] name, int replica) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        hash = (hash ^ replica) * 0x100000001b3L;
+        return mix(hash);
+    }
+
+    /**
+     * Перемешивание битов ключа (финализатор MurmurHash3)
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
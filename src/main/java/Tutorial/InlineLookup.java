@@ -0,0 +1,136 @@
+package Tutorial;
+
+import Tutorial.ReplyCatalog.Reply;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.inputmessagecontent.InputTextMessageContent;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResult;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResultArticle;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.cached.InlineQueryResultCachedDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Ответы на inline-запросы вида "@ZazinBot 14.03.1990": аркан по дате рождения
+ * без диалога и без сессии. Ответ зависит только от текста запроса, поэтому
+ * Telegram может долго кэшировать его у себя (cache_time) и не спрашивать бота
+ * о той же дате повторно.
+ *
+ * <p>Пол в запросе не указывается, поэтому в ответе два варианта аркана - для
+ * мужчины и для девушки. Готовые результаты хранятся по (аркан, пол): вариантов
+ * всего 44, поэтому вместо LRU - таблица на все варианты. Если PDF аркана уже
+ * загружался в Telegram, результат - документ по сохраненному file_id, иначе -
+ * текстовое сообщение с номером аркана. Результат пересобирается, когда у PDF
+ * появляется или меняется file_id либо меняется сам файл.
+ *
+ * <p>Inline-режим включается у @BotFather командой /setinline.
+ */
+final class InlineLookup {
+
+    // Параметр /start для кнопки перехода в диалог с ботом
+    static final String START_PARAMETER = "inline";
+
+    // Пока у PDF нет file_id, ответ кэшируется ненадолго: документ появится после первой загрузки
+    private static final int FALLBACK_CACHE_SECONDS = 60;
+
+    private static final Gender[] GENDERS = Gender.values();
+
+    /**
+     * Готовый результат и то, из чего он собран
+     * @param sha256 Хэш PDF аркана (null - файла нет)
+     * @param fileId file_id PDF (null - результат текстовый)
+     */
+    private record Slot(String sha256, String fileId, InlineQueryResult result) {
+    }
+
+    private final DestinyMatrix destinyMatrix;
+    private final ArcanumAssets arcanumAssets;
+    private final DocumentCache documentCache;
+    private final ReplyCatalog replies;
+    private final int cacheSeconds;
+
+    // Результаты по (аркан, пол): индекс arcanum * 2 + gender.ordinal().
+    // Гонки при заполнении безопасны: оба потока соберут одинаковый результат, который после сборки не меняется
+    private final Slot[] slots = new Slot[(ArcanumAssets.ARCANUM_COUNT + 1) * GENDERS.length];
+
+    /**
+     * @param cacheSeconds cache_time ответа, когда все результаты - документы
+     */
+    InlineLookup(DestinyMatrix destinyMatrix, ArcanumAssets arcanumAssets, DocumentCache documentCache,
+                 ReplyCatalog replies, int cacheSeconds) {
+        this.destinyMatrix = destinyMatrix;
+        this.arcanumAssets = arcanumAssets;
+        this.documentCache = documentCache;
+        this.replies = replies;
+        this.cacheSeconds = cacheSeconds;
+    }
+
+    /**
+     * Ответ на inline-запрос
+     * @param queryId ID запроса
+     * @param query Текст запроса (ожидается дата ДД.ММ.ГГГГ)
+     * @return Ответ; для текста, не похожего на дату, - без результатов, только с кнопкой перехода в диалог
+     */
+    AnswerInlineQuery answer(String queryId, String query) {
+        AnswerInlineQuery answer = new AnswerInlineQuery();
+        answer.setInlineQueryId(queryId);
+        answer.setIsPersonal(false);
+        answer.setSwitchPmText(replies.text(Reply.INLINE_SWITCH));
+        answer.setSwitchPmParameter(START_PARAMETER);
+
+        int date = InputParser.parseBirthdate(query.strip());
+        if (date == InputParser.INVALID) {
+            answer.setResults(List.of());
+            answer.setCacheTime(cacheSeconds);
+            return answer;
+        }
+
+        int arcanum = destinyMatrix.get(date, DestinyMatrix.DAY);
+        List<InlineQueryResult> results = new ArrayList<>(GENDERS.length);
+        boolean allDocuments = true;
+        for (Gender gender : GENDERS) {
+            Slot slot = slot(arcanum, gender);
+            results.add(slot.result());
+            allDocuments &= slot.fileId() != null;
+        }
+        answer.setResults(results);
+        answer.setCacheTime(allDocuments ? cacheSeconds : FALLBACK_CACHE_SECONDS);
+        return answer;
+    }
+
+    /**
+     * Готовый результат для (аркан, пол), пересобранный, если PDF или его file_id изменились
+     */
+    private Slot slot(int arcanum, Gender gender) {
+        int index = arcanum * GENDERS.length + gender.ordinal();
+        ArcanumAssets.Asset pdf = arcanumAssets.find(arcanum, gender == Gender.MALE);
+        String sha256 = pdf != null ? pdf.sha256() : null;
+        String fileId = sha256 != null ? documentCache.getFileId(sha256) : null;
+
+        Slot slot = slots[index];
+        if (slot == null || !Objects.equals(slot.sha256(), sha256) || !Objects.equals(slot.fileId(), fileId)) {
+            slot = new Slot(sha256, fileId, build(arcanum, gender, fileId));
+            slots[index] = slot;
+        }
+        return slot;
+    }
+
+    private InlineQueryResult build(int arcanum, Gender gender, String fileId) {
+        String number = String.valueOf(arcanum);
+        // ID результата уникален в пределах ответа: аркан и пол
+        String id = number + (gender == Gender.MALE ? "m" : "f");
+        String title = replies.text(Reply.INLINE_TITLE, gender, number);
+        if (fileId != null) {
+            InlineQueryResultCachedDocument document = new InlineQueryResultCachedDocument(id, fileId);
+            document.setTitle(title);
+            document.setCaption(replies.text(Reply.DOCUMENT_CAPTION, number));
+            document.setDescription(replies.text(Reply.INLINE_DESCRIPTION, gender));
+            return document;
+        }
+        InlineQueryResultArticle article = new InlineQueryResultArticle(id, title,
+                new InputTextMessageContent(replies.text(Reply.INLINE_ARTICLE, gender, number)));
+        article.setDescription(replies.text(Reply.INLINE_DESCRIPTION, gender));
+        return article;
+    }
+}
@@ -0,0 +1,137 @@
+package Tutorial;
+
+/**
+ * Разбор и проверка пользовательского ввода за один проход без регулярных
+ * выражений и без создания объектов.
+ */
+final class InputParser {
+
+    // Признак некорректной даты
+    static final int INVALID = -1;
+
+    // Допустимый диапазон годов рождения
+    static final int MIN_YEAR = 1900;
+    static final int MAX_YEAR = 2100;
+
+    // Ограничения длины имени
+    private static final int MIN_NAME_LENGTH = 2;
+    private static final int MAX_NAME_LENGTH = 50;
+
+    // Дней в месяце для невисокосного года (индекс - номер месяца)
+    private static final int[] DAYS_IN_MONTH = {0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private InputParser() {
+    }
+
+    /**
+     * Разбор даты в формате ДД.ММ.ГГГГ с проверкой по календарю (включая 29 февраля)
+     * @param text Введенный текст
+     * @return Дата, упакованная в int (см. {@link #day}, {@link #month}, {@link #year}), или {@link #INVALID}
+     */
+    static int parseBirthdate(CharSequence text) {
+        if (text.length() != 10 || text.charAt(2) != '.' || text.charAt(5) != '.') {
+            return INVALID;
+        }
+        int day = digits(text, 0, 2);
+        int month = digits(text, 3, 5);
+        int year = digits(text, 6, 10);
+        if (day < 0 || month < 0 || year < 0) {
+            return INVALID;
+        }
+        if (year < MIN_YEAR || year > MAX_YEAR || month < 1 || month > 12 || day < 1) {
+            return INVALID;
+        }
+        int daysInMonth = month == 2 && isLeapYear(year) ? 29 : DAYS_IN_MONTH[month];
+        if (day > daysInMonth) {
+            return INVALID;
+        }
+        return pack(day, month, year);
+    }
+
+    /**
+     * Разбор года из четырех цифр (пробелы по краям допускаются)
+     * @param text Введенный текст
+     * @param min Минимальный допустимый год
+     * @param max Максимальный допустимый год
+     * @return Год или {@link #INVALID}
+     */
+    static int parseYear(String text, int min, int max) {
+        String trimmed = text.strip();
+        if (trimmed.length() != 4) {
+            return INVALID;
+        }
+        int year = digits(trimmed, 0, 4);
+        return year < min || year > max ? INVALID : year;
+    }
+
+    /**
+     * Упаковка даты в int того же вида, что возвращает {@link #parseBirthdate}
+     * @param day День (1-31)
+     * @param month Месяц (1-12)
+     * @param year Год
+     * @return Упакованная дата
+     */
+    static int pack(int day, int month, int year) {
+        return (year << 9) | (month << 5) | day;
+    }
+
+    static int day(int date) {
+        return date & 0x1F;
+    }
+
+    static int month(int date) {
+        return (date >>> 5) & 0xF;
+    }
+
+    static int year(int date) {
+        return date >>> 9;
+    }
+
+    /**
+     * Проверка валидности имени: только латинские и русские буквы, 2-50 символов
+     * @param name Проверяемое имя
+     * @return true если имя валидно
+     */
+    static boolean isValidName(CharSequence name) {
+        int length = name.length();
+        if (length < MIN_NAME_LENGTH || length > MAX_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (!isNameLetter(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true для символов [A-Za-zА-Яа-яёЁ]
+     */
+    private static boolean isNameLetter(char c) {
+        return (c >= 'A' && c <= 'Z')
+                || (c >= 'a' && c <= 'z')
+                || (c >= 'А' && c <= 'я')
+                || c == 'ё' || c == 'Ё';
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Число из десятичных цифр в диапазоне [from, to)
+     * @return Значение или -1, если встретился не цифровой символ
+     */
+    private static int digits(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,218 @@
+package Tutorial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Метрики бота в памяти с выводом в текстовом формате Prometheus.
+ * Все метрики регистрируются при старте; запись - только инкременты
+ * {@link LongAdder} без блокировок, поэтому ее можно делать на горячем пути.
+ */
+final class Metrics {
+
+    // Границы гистограмм длительности, в наносекундах (100 мкс - 10 с)
+    static final long[] LATENCY_BUCKETS = {
+            TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MICROSECONDS.toNanos(500),
+            TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(5),
+            TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(50),
+            TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(250),
+            TimeUnit.MILLISECONDS.toNanos(500), TimeUnit.SECONDS.toNanos(1),
+            TimeUnit.SECONDS.toNanos(2), TimeUnit.SECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(10)};
+
+    // Границы гистограмм размера, в байтах (16 КБ - 50 МБ, лимит Bot API на документ)
+    static final long[] SIZE_BUCKETS = {
+            16L << 10, 64L << 10, 256L << 10, 1L << 20, 2L << 20, 5L << 20, 10L << 20, 20L << 20, 50L << 20};
+
+    // Наносекунд в секунде: гистограммы длительности выводятся в секундах
+    static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Family> families = new ArrayList<>();
+
+    /**
+     * Счетчик
+     */
+    static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        void increment() {
+            value.increment();
+        }
+
+        long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Гистограмма с фиксированными границами корзин
+     */
+    static final class Histogram {
+        private final long[] bounds;
+        // Последняя корзина - значения больше всех границ (+Inf)
+        private final LongAdder[] buckets;
+        private final LongAdder sum = new LongAdder();
+
+        Histogram(long[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param value Значение в единицах границ (наносекунды, байты)
+         */
+        void observe(long value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sum.add(value);
+        }
+
+        /**
+         * Длительность от момента start до текущего
+         * @param startNanos Результат System.nanoTime() в начале операции
+         */
+        void observeSince(long startNanos) {
+            observe(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Счетчик с одной меткой и заранее известными значениями метки
+     * @param name Имя метрики (с суффиксом _total)
+     * @param help Описание
+     * @param label Имя метки
+     * @param values Значения метки
+     * @return Счетчики в порядке значений метки
+     */
+    Counter[] counters(String name, String help, String label, String... values) {
+        Counter[] counters = new Counter[values.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new Counter();
+        }
+        families.add(new Family(name, help, "counter", label, values, counters, null, 1, null));
+        return counters;
+    }
+
+    /**
+     * Счетчик без меток
+     */
+    Counter counter(String name, String help) {
+        return counters(name, help, null, "")[0];
+    }
+
+    /**
+     * Гистограммы с одной меткой
+     * @param name Имя метрики
+     * @param help Описание
+     * @param bounds Границы корзин
+     * @param scale Делитель для вывода (например, наносекунды в секунды)
+     * @param label Имя метки
+     * @param values Значения метки
+     * @return Гистограммы в порядке значений метки
+     */
+    Histogram[] histograms(String name, String help, long[] bounds, double scale, String label, String... values) {
+        Histogram[] histograms = new Histogram[values.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram(bounds);
+        }
+        families.add(new Family(name, help, "histogram", label, values, null, histograms, scale, null));
+        return histograms;
+    }
+
+    /**
+     * Гистограмма без меток
+     */
+    Histogram histogram(String name, String help, long[] bounds, double scale) {
+        return histograms(name, help, bounds, scale, null, "")[0];
+    }
+
+    /**
+     * Значение, которое считывается из другого компонента в момент выгрузки
+     * @param type "gauge" или "counter"
+     */
+    void register(String name, String help, String type, LongSupplier value) {
+        families.add(new Family(name, help, type, null, new String[]{""}, null, null, 1, value));
+    }
+
+    /**
+     * Выгрузка всех метрик в текстовом формате Prometheus (version 0.0.4)
+     * @return Текст для ответа на /metrics
+     */
+    String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Family family : families) {
+            family.write(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Метрика со всеми значениями метки
+     */
+    private record Family(String name, String help, String type, String label, String[] values,
+                          Counter[] counters, Histogram[] histograms, double scale, LongSupplier supplier) {
+
+        void write(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            for (int i = 0; i < values.length; i++) {
+                if (supplier != null) {
+                    sample(out, name, i, null, supplier.getAsLong());
+                } else if (counters != null) {
+                    sample(out, name, i, null, counters[i].get());
+                } else {
+                    writeHistogram(out, i, histograms[i]);
+                }
+            }
+        }
+
+        private void writeHistogram(StringBuilder out, int i, Histogram histogram) {
+            long cumulative = 0;
+            for (int b = 0; b < histogram.buckets.length; b++) {
+                cumulative += histogram.buckets[b].sum();
+                String le = b < histogram.bounds.length ? format(histogram.bounds[b] / scale) : "+Inf";
+                sample(out, name + "_bucket", i, le, cumulative);
+            }
+            out.append(name).append("_sum");
+            labels(out, i, null);
+            out.append(' ').append(format(histogram.sum.sum() / scale)).append('\n');
+            sample(out, name + "_count", i, null, cumulative);
+        }
+
+        private void sample(StringBuilder out, String sampleName, int i, String le, long value) {
+            out.append(sampleName);
+            labels(out, i, le);
+            out.append(' ').append(value).append('\n');
+        }
+
+        private void labels(StringBuilder out, int i, String le) {
+            if (label == null && le == null) {
+                return;
+            }
+            out.append('{');
+            if (label != null) {
+                out.append(label).append("=\"").append(values[i]).append('"');
+            }
+            if (le != null) {
+                if (label != null) {
+                    out.append(',');
+                }
+                out.append("le=\"").append(le).append('"');
+            }
+            out.append('}');
+        }
+
+        private static String format(double value) {
+            return value == Math.rint(value) && Math.abs(value) < 1e15
+                    ? String.valueOf((long) value) : String.valueOf(value);
+        }
+    }
+}
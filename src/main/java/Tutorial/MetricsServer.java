@@ -0,0 +1,64 @@
+package Tutorial;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Встроенный HTTP-сервер, отдающий метрики бота на GET /metrics
+ * в текстовом формате Prometheus
+ */
+final class MetricsServer implements AutoCloseable {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final Metrics metrics;
+
+    /**
+     * @param port Порт HTTP-сервера
+     * @param metrics Метрики для выгрузки
+     */
+    MetricsServer(int port, Metrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/metrics", this::handle);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    void start() {
+        server.start();
+    }
+
+    /**
+     * @return Фактический порт сервера (полезно при запуске на порту 0)
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package Tutorial;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Асинхронная очередь исходящих запросов к Bot API с учетом лимитов Telegram.
+ * Общий token bucket ограничивает скорость всего бота, отдельный bucket у каждого
+ * чата - скорость сообщений в один чат. Запросы одного чата выполняются строго
+ * по очереди (следующий уходит только после ответа на предыдущий), поэтому
+ * порядок сообщений сохраняется. Ответ 429 выдерживает паузу retry_after только
+ * в очереди своего чата (лимит группы или получателя рассылки не должен останавливать
+ * остальные диалоги). С растущей паузой повторяются только ошибки подключения:
+ * после них запрос точно не дошел до Telegram. Таймаут ответа, ошибки разбора и
+ * проверки запроса не повторяются - повтор не исправит их или отправит сообщение дважды.
+ */
+final class OutboundQueue implements AutoCloseable {
+
+    /**
+     * Запуск асинхронного запроса к Bot API
+     */
+    @FunctionalInterface
+    interface Call<T> {
+        CompletableFuture<T> start() throws TelegramApiException;
+    }
+
+    // Базовая пауза перед повтором после сетевой ошибки
+    private static final long RETRY_BASE_MS = 1000;
+
+    private final TokenBucket global;
+    private final double chatRate;
+    private final double chatBurst;
+    private final int maxQueuePerChat;
+    private final int maxAttempts;
+
+    // Очереди чатов, в которых есть неотправленные запросы (ключ - chatId)
+    private final ConcurrentHashMap<Long, Lane> lanes = new ConcurrentHashMap<>();
+
+    // Очереди, готовые к отправке, упорядоченные по времени готовности
+    private final DelayQueue<Lane> ready = new DelayQueue<>();
+
+    private final Thread scheduler;
+    private volatile boolean running = true;
+
+    private final AtomicInteger depth = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    /**
+     * @param globalRate Запросов в секунду на весь бот
+     * @param chatRate Запросов в секунду в один чат
+     * @param chatBurst Сколько запросов в чат можно отправить подряд без паузы
+     * @param maxQueuePerChat Максимальная длина очереди одного чата (лишнее отбрасывается)
+     * @param maxAttempts Максимальное количество попыток одного запроса
+     */
+    OutboundQueue(double globalRate, double chatRate, double chatBurst, int maxQueuePerChat, int maxAttempts) {
+        this.global = new TokenBucket(globalRate, globalRate);
+        this.chatRate = chatRate;
+        this.chatBurst = chatBurst;
+        this.maxQueuePerChat = maxQueuePerChat;
+        this.maxAttempts = maxAttempts;
+        this.scheduler = new Thread(this::scheduleLoop, "outbound-scheduler");
+        this.scheduler.setDaemon(true);
+        this.scheduler.start();
+    }
+
+    /**
+     * Постановка запроса в очередь чата
+     * @param chatId ID чата
+     * @param call Запуск запроса (вызывается, когда подойдет очередь и лимиты позволят)
+     * @return Результат запроса после всех повторов
+     */
+    <T> CompletableFuture<T> submit(long chatId, Call<T> call) {
+        Item<T> item = new Item<>(call);
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(chatId, Lane::new);
+            synchronized (lane) {
+                // Очередь могла быть удалена между поиском и блокировкой - берем новую
+                if (lane.retired) {
+                    continue;
+                }
+                if (lane.items.size() >= maxQueuePerChat) {
+                    dropped.increment();
+                    item.result.completeExceptionally(
+                            new TelegramApiException("Очередь чата " + chatId + " переполнена"));
+                    return item.result;
+                }
+                lane.items.add(item);
+                depth.incrementAndGet();
+                if (!lane.inFlight && !lane.scheduled) {
+                    schedule(lane, System.nanoTime());
+                }
+            }
+            return item.result;
+        }
+    }
+
+    /**
+     * @param chatId ID чата
+     * @return true если для чата нет ни ожидающих, ни выполняющихся запросов
+     */
+    boolean isIdle(long chatId) {
+        Lane lane = lanes.get(chatId);
+        if (lane == null) {
+            return true;
+        }
+        synchronized (lane) {
+            return lane.items.isEmpty() && !lane.inFlight;
+        }
+    }
+
+    /**
+     * @return Количество запросов в очередях (включая выполняющиеся)
+     */
+    int depth() {
+        return depth.get();
+    }
+
+    long sent() {
+        return sent.sum();
+    }
+
+    long failed() {
+        return failed.sum();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    long retried() {
+        return retried.sum();
+    }
+
+    long rateLimited() {
+        return rateLimited.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        scheduler.interrupt();
+    }
+
+    /**
+     * Цикл планировщика: выбирает готовую очередь и отправляет ее первый запрос
+     */
+    private void scheduleLoop() {
+        try {
+            while (running) {
+                Lane lane = ready.take();
+
+                // Общий лимит: ждем токен, не трогая остальные очереди
+                long wait;
+                while ((wait = global.nanosUntilToken(System.nanoTime())) > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                dispatch(lane);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Отправка первого запроса очереди, если лимит чата позволяет
+     * @param lane Очередь чата
+     */
+    private void dispatch(Lane lane) {
+        Item<?> item;
+        synchronized (lane) {
+            lane.scheduled = false;
+            item = lane.items.peek();
+            if (item == null) {
+                retireIfIdle(lane);
+                return;
+            }
+
+            long now = System.nanoTime();
+            long wait = lane.bucket.nanosUntilToken(now);
+            if (wait > 0) {
+                schedule(lane, now + wait);
+                return;
+            }
+            lane.bucket.take();
+            global.take();
+            lane.inFlight = true;
+        }
+        start(lane, item);
+    }
+
+    /**
+     * Запуск запроса и обработка его результата
+     */
+    private <T> void start(Lane lane, Item<T> item) {
+        item.attempts++;
+        CompletableFuture<T> future;
+        try {
+            future = item.call.start();
+        } catch (TelegramApiException | RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, error) -> complete(lane, item, value, error));
+    }
+
+    /**
+     * Завершение попытки: успех, повтор или окончательная ошибка
+     */
+    private <T> void complete(Lane lane, Item<T> item, T value, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        long retryDelayMs = cause == null ? -1 : retryDelayMs(cause, item.attempts);
+
+        synchronized (lane) {
+            lane.inFlight = false;
+            if (retryDelayMs >= 0) {
+                // Запрос остается первым в очереди, порядок чата не нарушается
+                retried.increment();
+                schedule(lane, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMs));
+            } else {
+                lane.items.poll();
+                depth.decrementAndGet();
+                if (!lane.items.isEmpty()) {
+                    schedule(lane, System.nanoTime());
+                } else {
+                    retireIfIdle(lane);
+                }
+            }
+        }
+
+        if (retryDelayMs >= 0) {
+            return;
+        }
+        if (cause == null) {
+            sent.increment();
+            item.result.complete(value);
+        } else {
+            failed.increment();
+            item.result.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Пауза перед повтором запроса
+     * @param error Ошибка попытки
+     * @param attempts Сколько попыток уже сделано
+     * @return Пауза в миллисекундах или -1, если повторять не нужно
+     */
+    private long retryDelayMs(Throwable error, int attempts) {
+        if (attempts >= maxAttempts) {
+            return -1;
+        }
+        // Сетевую ошибку библиотека оборачивает в TelegramApiRequestException с кодом 0
+        if (error instanceof TelegramApiRequestException requestError
+                && requestError.getErrorCode() != null && requestError.getErrorCode() != 0) {
+            if (requestError.getErrorCode() == 429) {
+                rateLimited.increment();
+                Integer retryAfter = requestError.getParameters() != null
+                        ? requestError.getParameters().getRetryAfter() : null;
+                return retryAfter != null ? TimeUnit.SECONDS.toMillis(retryAfter) : RETRY_BASE_MS << (attempts - 1);
+            }
+            // Остальные ответы Telegram (400, 403...) повтор не исправит
+            return -1;
+        }
+        // Запрос не ушел дальше подключения - повторяем с растущей паузой
+        return isConnectFailure(error) ? RETRY_BASE_MS << (attempts - 1) : -1;
+    }
+
+    /**
+     * Ошибка подключения к Bot API: соединение не установлено, запрос не отправлен
+     * @param error Ошибка попытки (сетевая ошибка обернута в исключение без кода)
+     * @return true если в цепочке причин есть ошибка подключения
+     */
+    static boolean isConnectFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            // HttpConnectTimeoutException - у BotTransport, ConnectTimeoutException - у клиента библиотеки
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException
+                    || cause instanceof ConnectTimeoutException || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Постановка очереди в планировщик (под блокировкой очереди)
+     */
+    private void schedule(Lane lane, long readyAtNanos) {
+        lane.readyAt = readyAtNanos;
+        lane.scheduled = true;
+        ready.add(lane);
+    }
+
+    /**
+     * Удаление пустой очереди из карты (под блокировкой очереди)
+     */
+    private void retireIfIdle(Lane lane) {
+        if (lane.items.isEmpty() && !lane.inFlight && !lane.scheduled) {
+            lane.retired = true;
+            lanes.remove(lane.chatId, lane);
+        }
+    }
+
+    /**
+     * Запрос в очереди
+     */
+    private static final class Item<T> {
+        final Call<T> call;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        int attempts;
+
+        Item(Call<T> call) {
+            this.call = call;
+        }
+    }
+
+    /**
+     * Очередь запросов одного чата
+     */
+    private final class Lane implements Delayed {
+        final long chatId;
+        final ArrayDeque<Item<?>> items = new ArrayDeque<>();
+        final TokenBucket bucket = new TokenBucket(chatRate, chatBurst);
+        boolean inFlight;
+        boolean scheduled;
+        boolean retired;
+        volatile long readyAt;
+
+        Lane(long chatId) {
+            this.chatId = chatId;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(readyAt, ((Lane) other).readyAt);
+        }
+    }
+
+    /**
+     * Token bucket: rate токенов в секунду, не больше burst накопленных
+     */
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double burst;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double ratePerSecond, double burst) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        /**
+         * @return Сколько наносекунд ждать до появления токена (0 - токен есть)
+         */
+        long nanosUntilToken(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+    }
+}
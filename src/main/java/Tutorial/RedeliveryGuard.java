@@ -0,0 +1,49 @@
+package Tutorial;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Отсев повторных доставок webhook-обновлений по update_id. Telegram повторяет
+ * доставку, если не получил ответ 2xx вовремя, а входная точка кластера отвечает
+ * ошибкой по таймауту пересылки, когда узел, возможно, уже обрабатывает обновление.
+ * Без отсева такое обновление обработалось бы дважды.
+ *
+ * <p>Последние update_id хранятся в кольце фиксированного размера без блокировок:
+ * ячейка - update_id по модулю размера, в ней остается наибольший из виденных.
+ * update_id у бота растут по порядку, поэтому окно - последние {@link #WINDOW}
+ * обновлений; повторная доставка приходит в пределах минут, задолго до вытеснения.
+ */
+final class RedeliveryGuard {
+
+    // Размер окна (степень двойки): 256 КБ на процесс
+    static final int WINDOW = 1 << 16;
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private final AtomicIntegerArray seen = new AtomicIntegerArray(WINDOW);
+
+    RedeliveryGuard() {
+        for (int i = 0; i < WINDOW; i++) {
+            seen.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Отметка обновления как полученного
+     * @param updateId update_id обновления
+     * @return true если обновление пришло впервые; false - повторная доставка
+     * или обновление старше окна
+     */
+    boolean firstDelivery(int updateId) {
+        int index = updateId & (WINDOW - 1);
+        while (true) {
+            int previous = seen.get(index);
+            if (previous != EMPTY && previous >= updateId) {
+                return false;
+            }
+            if (seen.compareAndSet(index, previous, updateId)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package Tutorial;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Хранилище сессий на {@link SessionStoreServer} по локальной сети.
+ * Каждая операция - один запрос по свободному соединению из пула (соединения
+ * открываются по мере надобности и переиспользуются). Все операции идемпотентны,
+ * поэтому при обрыве соединения запрос один раз повторяется по новому соединению;
+ * если сервер недоступен, операция завершается {@link UncheckedIOException}.
+ * Каждое новое соединение начинается с предъявления секрета кластера.
+ *
+ * <p>Удаление по TTL выполняет сам сервер, {@link #evictExpired()} ничего не делает.
+ *
+ * <p>Размер и счетчики сервера нужны только метрикам, поэтому читаются одним запросом
+ * не чаще раза в секунду и не бросают исключений: если сервер недоступен, остаются
+ * последние известные значения, а {@link #reachable()} возвращает false.
+ */
+final class RemoteSessionStore implements SessionStore, AutoCloseable {
+
+    // Как долго статистика сервера считается свежей: одна выгрузка метрик - один запрос
+    private static final long STATS_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final InetSocketAddress address;
+    private final String secret;
+    private final int timeoutMs;
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    // Последняя статистика сервера, время ее запроса и удался ли он (под блокировкой this)
+    private long[] stats = new long[4];
+    private long statsAt = System.nanoTime() - STATS_MAX_AGE_NANOS;
+    private boolean reachable = true;
+
+    /**
+     * Запрос к серверу по одному соединению
+     */
+    private interface Request<T> {
+        T execute(DataInputStream in, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Соединение с сервером
+     */
+    private static final class Connection implements AutoCloseable {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address, String secret, int timeoutMs) throws IOException {
+            socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(address, timeoutMs);
+                socket.setSoTimeout(timeoutMs);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeUTF(secret);
+                out.flush();
+                // При неверном секрете сервер закрывает соединение без ответа
+                try {
+                    in.readByte();
+                } catch (EOFException e) {
+                    throw new IOException("Хранилище сессий отклонило секрет кластера", e);
+                }
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Соединение уже не нужно
+            }
+        }
+    }
+
+    /**
+     * @param address Адрес сервера в виде host:port
+     * @param secret Секрет кластера, который ожидает сервер
+     * @param timeoutMs Таймаут подключения и ожидания ответа
+     */
+    RemoteSessionStore(String address, String secret, int timeoutMs) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Адрес хранилища сессий должен быть вида host:port: " + address);
+        }
+        this.address = new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        this.secret = secret;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public long get(long chatId) {
+        return call((in, out) -> {
+            out.writeByte(SessionStoreServer.OP_GET);
+            out.writeLong(chatId);
+            out.flush();
+            return in.readLong();
+        });
+    }
+
+    @Override
+    public void put(long chatId, long session) {
+        call((in, out) -> {
+            out.writeByte(SessionStoreServer.OP_PUT);
+            out.writeLong(chatId);
+            out.writeLong(session);
+            out.flush();
+            return in.readByte();
+        });
+    }
+
+    @Override
+    public String getName(long chatId) {
+        return call((in, out) -> {
+            out.writeByte(SessionStoreServer.OP_GET_NAME);
+            out.writeLong(chatId);
+            out.flush();
+            return SessionStoreServer.readName(in);
+        });
+    }
+
+    @Override
+    public void putName(long chatId, String name) {
+        call((in, out) -> {
+            out.writeByte(SessionStoreServer.OP_PUT_NAME);
+            out.writeLong(chatId);
+            out.writeUTF(name);
+            out.flush();
+            return in.readByte();
+        });
+    }
+
+    @Override
+    public void restore(long chatId, long session, String name) {
+        call((in, out) -> {
+            out.writeByte(SessionStoreServer.OP_RESTORE);
+            out.writeLong(chatId);
+            out.writeLong(session);
+            SessionStoreServer.writeName(out, name);
+            out.flush();
+            return in.readByte();
+        });
+    }
+
+    @Override
+    public void remove(long chatId) {
+        call((in, out) -> {
+            out.writeByte(SessionStoreServer.OP_REMOVE);
+            out.writeLong(chatId);
+            out.flush();
+            return in.readByte();
+        });
+    }
+
+    @Override
+    public void evictExpired() {
+        // Сессии по TTL удаляет сервер
+    }
+
+    /**
+     * Обход всех сессий сервера. Посетитель вызывается по мере чтения ответа,
+     * поэтому при обрыве посередине часть сессий может быть уже обработана.
+     */
+    @Override
+    public void forEach(Visitor visitor) {
+        Connection connection = borrow();
+        try {
+            connection.out.writeByte(SessionStoreServer.OP_SCAN);
+            connection.out.flush();
+            long chatId;
+            while ((chatId = connection.in.readLong()) != 0) {
+                long session = connection.in.readLong();
+                visitor.visit(chatId, session, SessionStoreServer.readName(connection.in));
+            }
+            release(connection);
+        } catch (IOException e) {
+            connection.close();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // Ответ дочитан не до конца - соединение нельзя переиспользовать
+            connection.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) stats()[0];
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return stats()[1];
+    }
+
+    @Override
+    public long ttlEvictions() {
+        return stats()[2];
+    }
+
+    @Override
+    public long capacityEvictions() {
+        return stats()[3];
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return true если последний запрос статистики к серверу удался
+     */
+    synchronized boolean reachable() {
+        stats();
+        return reachable;
+    }
+
+    /**
+     * @return Размер, память, удаления по TTL и вытеснения на сервере (последние известные)
+     */
+    private synchronized long[] stats() {
+        long now = System.nanoTime();
+        if (now - statsAt < STATS_MAX_AGE_NANOS) {
+            return stats;
+        }
+        // Время отмечаем и при ошибке: недоступный сервер не должен задерживать каждую метрику на таймаут
+        statsAt = now;
+        try {
+            stats = call((in, out) -> {
+                out.writeByte(SessionStoreServer.OP_STATS);
+                out.flush();
+                return new long[]{in.readInt(), in.readLong(), in.readLong(), in.readLong()};
+            });
+            reachable = true;
+        } catch (UncheckedIOException e) {
+            reachable = false;
+        }
+        return stats;
+    }
+
+    /**
+     * Выполнение запроса с одним повтором по новому соединению
+     * @param request Запрос
+     * @return Ответ сервера
+     */
+    private <T> T call(Request<T> request) {
+        IOException failure = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Connection connection = attempt == 0 ? borrow() : open();
+            try {
+                T result = request.execute(connection.in, connection.out);
+                release(connection);
+                return result;
+            } catch (IOException e) {
+                // Соединение могло устареть (перезапуск сервера) - закрываем и пробуем новое
+                connection.close();
+                failure = e;
+            }
+        }
+        throw new UncheckedIOException("Хранилище сессий " + address + " недоступно", failure);
+    }
+
+    private Connection borrow() {
+        Connection connection = idle.poll();
+        return connection != null ? connection : open();
+    }
+
+    private Connection open() {
+        try {
+            return new Connection(address, secret, timeoutMs);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось подключиться к хранилищу сессий " + address, e);
+        }
+    }
+
+    private void release(Connection connection) {
+        idle.add(connection);
+        if (closed) {
+            close();
+        }
+    }
+}
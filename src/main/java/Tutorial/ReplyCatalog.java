@@ -0,0 +1,284 @@
+package Tutorial;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiValidationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Каталог ответов бота: тексты и клавиатуры загружаются один раз при старте
+ * из replies.properties и дальше используются всеми потоками без изменений.
+ * Шаблоны заранее разбиты на части, клавиатуры заранее сериализованы в JSON,
+ * поэтому на каждое сообщение не строятся ни объекты кнопок, ни длинные строки.
+ */
+final class ReplyCatalog {
+
+    // Каталог по умолчанию внутри jar
+    static final String DEFAULT_RESOURCE = "/replies.properties";
+
+    /**
+     * Ответы бота: ключ в файле и имена подстановок
+     */
+    enum Reply {
+        START("start"),
+        UNKNOWN("unknown"),
+        NAME_PROMPT("name.prompt"),
+        NAME_CONFIRM("name.confirm", "name"),
+        NAME_INVALID("name.invalid"),
+        NAME_RETRY("name.retry"),
+        BIRTHDATE_PROMPT("birthdate.prompt"),
+        BIRTHDATE_CONFIRM("birthdate.confirm", "date"),
+        BIRTHDATE_INVALID("birthdate.invalid"),
+        BIRTHDATE_RETRY("birthdate.retry"),
+        BIRTHDATE_ERROR("birthdate.error"),
+        DOCUMENT_CAPTION("document.caption", "arcanum"),
+        DOCUMENT_MISSING("document.missing"),
+        DOCUMENT_ERROR("document.error"),
+        MORE_PROMPT("more.prompt"),
+        MORE_SERVICES("more.services"),
+        MORE_CONTACT("more.contact"),
+        MORE_DECLINED("more.declined"),
+        BROADCAST_USAGE("broadcast.usage"),
+        BROADCAST_STARTED("broadcast.started", "total"),
+        BROADCAST_BUSY("broadcast.busy"),
+        BROADCAST_STATUS("broadcast.status", "done", "total", "sent", "pruned", "failed"),
+        BROADCAST_IDLE("broadcast.idle"),
+        BROADCAST_CANCELLED("broadcast.cancelled"),
+        BROADCAST_FINISHED("broadcast.finished", "total", "sent", "pruned", "failed"),
+        BROADCAST_ERROR("broadcast.error"),
+        FORECAST_PROMPT("forecast.prompt", "from", "to"),
+        FORECAST_YEAR_INVALID("forecast.year.invalid", "from", "to"),
+        FORECAST_CONFIRM("forecast.confirm", "year"),
+        FORECAST_RETRY("forecast.retry"),
+        FORECAST_ACCEPTED("forecast.accepted", "year"),
+        FORECAST_ORDER("forecast.order", "name", "date", "year", "chat"),
+        FORECAST_NO_NAME("forecast.noname"),
+        INLINE_TITLE("inline.title", "arcanum"),
+        INLINE_DESCRIPTION("inline.description"),
+        INLINE_ARTICLE("inline.article", "arcanum"),
+        INLINE_SWITCH("inline.switch");
+
+        final String key;
+        final String[] params;
+
+        Reply(String key, String... params) {
+            this.key = key;
+            this.params = params;
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Шаблоны по (ответ, пол): индекс reply.ordinal() * 2 + gender.ordinal()
+    private final Template[] templates;
+
+    private final ReplyKeyboard genderKeyboard;
+    private final ReplyKeyboard confirmationKeyboard;
+    private final ReplyKeyboard forecastKeyboard;
+
+    private ReplyCatalog(Properties properties) {
+        Gender[] genders = Gender.values();
+        templates = new Template[Reply.values().length * genders.length];
+        for (Reply reply : Reply.values()) {
+            for (Gender gender : genders) {
+                String key = reply.key + "." + gender.name().toLowerCase();
+                String text = properties.getProperty(key, properties.getProperty(reply.key));
+                if (text == null) {
+                    throw new IllegalStateException("В каталоге ответов нет ключа " + reply.key);
+                }
+                templates[reply.ordinal() * genders.length + gender.ordinal()] = Template.compile(key, text, reply.params);
+            }
+        }
+
+        genderKeyboard = keyboard(
+                button(properties, "button.gender.male", DialogFlow.Input.GENDER_MALE),
+                button(properties, "button.gender.female", DialogFlow.Input.GENDER_FEMALE));
+        confirmationKeyboard = keyboard(
+                button(properties, "button.confirm.yes", DialogFlow.Input.YES),
+                button(properties, "button.confirm.no", DialogFlow.Input.NO));
+        forecastKeyboard = keyboard(button(properties, "button.forecast", DialogFlow.Input.FORECAST));
+    }
+
+    /**
+     * Загрузка каталога: сначала встроенный файл, затем ключи из внешнего файла
+     * @param overrideFile Внешний файл с изменениями текстов (null - только встроенный)
+     * @return Каталог ответов
+     */
+    static ReplyCatalog load(Path overrideFile) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = ReplyCatalog.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Не найден ресурс " + DEFAULT_RESOURCE);
+            }
+            properties.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        if (overrideFile != null) {
+            try (Reader reader = Files.newBufferedReader(overrideFile, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            System.out.println("Тексты ответов загружены из " + overrideFile);
+        }
+        return new ReplyCatalog(properties);
+    }
+
+    /**
+     * Текст ответа
+     * @param reply Ответ
+     * @param gender Пол пользователя (null - женский вариант текста)
+     * @param values Значения подстановок в порядке {@link Reply#params}
+     * @return Готовый текст (для ответов без подстановок - общий экземпляр строки)
+     */
+    String text(Reply reply, Gender gender, String... values) {
+        Gender variant = gender != null ? gender : Gender.FEMALE;
+        return templates[reply.ordinal() * Gender.values().length + variant.ordinal()].format(values);
+    }
+
+    /**
+     * Текст ответа, не зависящего от пола
+     */
+    String text(Reply reply, String... values) {
+        return text(reply, null, values);
+    }
+
+    /**
+     * @return Общая клавиатура выбора пола
+     */
+    ReplyKeyboard genderKeyboard() {
+        return genderKeyboard;
+    }
+
+    /**
+     * @return Общая клавиатура "Да"/"Нет"
+     */
+    ReplyKeyboard confirmationKeyboard() {
+        return confirmationKeyboard;
+    }
+
+    /**
+     * @return Клавиатура с кнопкой заявки на прогноз на год
+     */
+    ReplyKeyboard forecastKeyboard() {
+        return forecastKeyboard;
+    }
+
+    private static InlineKeyboardButton button(Properties properties, String key, DialogFlow.Input input) {
+        String text = properties.getProperty(key);
+        if (text == null) {
+            throw new IllegalStateException("В каталоге ответов нет ключа " + key);
+        }
+        InlineKeyboardButton button = new InlineKeyboardButton();
+        button.setText(text);
+        button.setCallbackData(input.callbackData);
+        return button;
+    }
+
+    /**
+     * Клавиатура из одного ряда кнопок, проверенная и сериализованная заранее
+     */
+    private static ReplyKeyboard keyboard(InlineKeyboardButton... buttons) {
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        rows.add(List.of(buttons));
+        markup.setKeyboard(rows);
+        try {
+            markup.validate();
+            return new PreparedKeyboard(MAPPER.writeValueAsString(markup));
+        } catch (TelegramApiValidationException | JsonProcessingException e) {
+            throw new IllegalStateException("Некорректная клавиатура в каталоге ответов", e);
+        }
+    }
+
+    /**
+     * Клавиатура, уже сериализованная в JSON: при отправке сообщения
+     * ее текст вставляется в запрос как есть
+     */
+    static final class PreparedKeyboard implements ReplyKeyboard {
+        private static final long serialVersionUID = 1L;
+
+        private final String json;
+
+        PreparedKeyboard(String json) {
+            this.json = json;
+        }
+
+        @JsonValue
+        @JsonRawValue
+        String json() {
+            return json;
+        }
+
+        @Override
+        public void validate() {
+            // Проверена при загрузке каталога
+        }
+    }
+
+    /**
+     * Шаблон текста, заранее разбитый на постоянные части и подстановки
+     * @param parts Постоянные части (на одну больше, чем подстановок)
+     * @param args Номер значения для каждой подстановки
+     */
+    private record Template(String[] parts, int[] args, int length) {
+
+        /**
+         * Разбор шаблона с подстановками вида {name}
+         * @param key Ключ (для сообщения об ошибке)
+         * @param text Текст шаблона
+         * @param params Допустимые имена подстановок
+         */
+        static Template compile(String key, String text, String[] params) {
+            List<String> parts = new ArrayList<>();
+            List<Integer> args = new ArrayList<>();
+            int from = 0;
+            int open;
+            while ((open = text.indexOf('{', from)) >= 0) {
+                int close = text.indexOf('}', open);
+                if (close < 0) {
+                    break;
+                }
+                String name = text.substring(open + 1, close);
+                int arg = List.of(params).indexOf(name);
+                if (arg < 0) {
+                    throw new IllegalStateException("Неизвестная подстановка {" + name + "} в " + key);
+                }
+                parts.add(text.substring(from, open));
+                args.add(arg);
+                from = close + 1;
+            }
+            parts.add(text.substring(from));
+
+            int length = 0;
+            for (String part : parts) {
+                length += part.length();
+            }
+            return new Template(parts.toArray(new String[0]),
+                    args.stream().mapToInt(Integer::intValue).toArray(), length);
+        }
+
+        String format(String... values) {
+            if (args.length == 0) {
+                return parts[0];
+            }
+            StringBuilder text = new StringBuilder(length + 16 * args.length);
+            for (int i = 0; i < args.length; i++) {
+                text.append(parts[i]).append(values[args[i]]);
+            }
+            return text.append(parts[args.length]).toString();
+        }
+    }
+}
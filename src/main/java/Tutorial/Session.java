@@ -0,0 +1,97 @@
+package Tutorial;
+
+/**
+ * Сессия диалога, упакованная в одно значение long.
+ * Раскладка битов:
+ * <pre>
+ *  0-4   состояние диалога (порядковый номер {@link UserState})
+ *  5-6   пол: 0 - не выбран, 1 - мужчина, 2 - девушка
+ *  7-13  день рождения (0 - дата не введена)
+ *  14-20 месяц рождения
+ *  21-34 год рождения
+ *  35-48 год прогноза из заявки (0 - заявки нет)
+ * </pre>
+ * Значение 0 соответствует новой сессии в состоянии START.
+ */
+final class Session {
+
+    // Пустая сессия: START, без данных
+    static final long EMPTY = 0L;
+
+    private static final int STATE_SHIFT = 0;
+    private static final long STATE_MASK = 0x1FL;
+    private static final int GENDER_SHIFT = 5;
+    private static final long GENDER_MASK = 0x3L;
+    private static final int DAY_SHIFT = 7;
+    private static final long DAY_MASK = 0x7FL;
+    private static final int MONTH_SHIFT = 14;
+    private static final long MONTH_MASK = 0x7FL;
+    private static final int YEAR_SHIFT = 21;
+    private static final long YEAR_MASK = 0x3FFFL;
+    private static final int FORECAST_YEAR_SHIFT = 35;
+    private static final long FORECAST_YEAR_MASK = 0x3FFFL;
+
+    private Session() {
+    }
+
+    static UserState state(long session) {
+        return UserState.of((int) ((session >>> STATE_SHIFT) & STATE_MASK));
+    }
+
+    static long withState(long session, UserState state) {
+        return set(session, STATE_SHIFT, STATE_MASK, state.ordinal());
+    }
+
+    /**
+     * @return Выбранный пол или null, если пол еще не выбран
+     */
+    static Gender gender(long session) {
+        int bits = (int) ((session >>> GENDER_SHIFT) & GENDER_MASK);
+        return bits == 0 ? null : Gender.values()[bits - 1];
+    }
+
+    static long withGender(long session, Gender gender) {
+        return set(session, GENDER_SHIFT, GENDER_MASK, gender.ordinal() + 1);
+    }
+
+    static boolean hasBirthdate(long session) {
+        return day(session) != 0;
+    }
+
+    static int day(long session) {
+        return (int) ((session >>> DAY_SHIFT) & DAY_MASK);
+    }
+
+    static int month(long session) {
+        return (int) ((session >>> MONTH_SHIFT) & MONTH_MASK);
+    }
+
+    static int year(long session) {
+        return (int) ((session >>> YEAR_SHIFT) & YEAR_MASK);
+    }
+
+    static long withBirthdate(long session, int day, int month, int year) {
+        session = set(session, DAY_SHIFT, DAY_MASK, day);
+        session = set(session, MONTH_SHIFT, MONTH_MASK, month);
+        return set(session, YEAR_SHIFT, YEAR_MASK, year);
+    }
+
+    static int forecastYear(long session) {
+        return (int) ((session >>> FORECAST_YEAR_SHIFT) & FORECAST_YEAR_MASK);
+    }
+
+    static long withForecastYear(long session, int year) {
+        return set(session, FORECAST_YEAR_SHIFT, FORECAST_YEAR_MASK, year);
+    }
+
+    /**
+     * @return Дата рождения в формате ДД.ММ.ГГГГ
+     */
+    static String formatBirthdate(long session) {
+        return String.format("%02d.%02d.%04d", day(session), month(session), year(session));
+    }
+
+    private static long set(long session, int shift, long mask, long value) {
+        return (session & ~(mask << shift)) | ((value & mask) << shift);
+    }
+}
@@ -0,0 +1,352 @@
+package Tutorial;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений сессий на диске, переживающий перезапуск бота.
+ * Изменения из {@link CompactSessionStore} складываются в очередь без ожидания диска,
+ * а фоновый поток пачками дописывает их в отображенный в память файл журнала
+ * (без fsync на каждое сообщение: после записи в отображение данные переживают
+ * падение процесса). Периодически журнал сжимается в снимок всех сессий.
+ * При старте сессии восстанавливаются из снимка и хвоста журнала.
+ *
+ * <p>Запись журнала: [int длина][int crc32][byte тип][long chatId][long сессия][short длина имени][имя UTF-8].
+ * Снимок: [magic][long поколение], затем [long chatId][long сессия][имя] до chatId 0.
+ * Журнал и снимок помечены номером поколения; журнал применяется только к снимку того же поколения.
+ */
+final class SessionJournal implements CompactSessionStore.Listener, AutoCloseable {
+
+    private static final int JOURNAL_MAGIC = 0x534A524E; // "SJRN"
+    private static final int SNAPSHOT_MAGIC = 0x53534E50; // "SSNP"
+
+    // Заголовок журнала: magic + поколение
+    private static final int HEADER_SIZE = 4 + 8;
+
+    // Длина и crc32 перед телом записи
+    private static final int RECORD_PREFIX = 4 + 4;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+
+    // Размер отображенного файла журнала
+    private static final int JOURNAL_CAPACITY = 64 * 1024 * 1024;
+
+    // Как часто фоновый поток сбрасывает накопленные изменения
+    private static final long FLUSH_INTERVAL_MS = 20;
+
+    // Как часто журнал сжимается в снимок
+    private static final long SNAPSHOT_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Изменение сессии, ожидающее записи
+     */
+    private record Change(byte type, long chatId, long session, String name) {
+    }
+
+    private final CompactSessionStore store;
+    private final Path snapshotPath;
+    private final FileChannel channel;
+    private final MappedByteBuffer journal;
+    private final Queue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+
+    private long generation;
+    private long lastSnapshotMs = System.currentTimeMillis();
+    private volatile boolean running = true;
+
+    /**
+     * Открытие журнала в папке, восстановление сессий в хранилище и подключение к нему
+     * @param directory Папка для журнала и снимка
+     * @param store Хранилище сессий (пустое)
+     * @param recoveryBudgetMs Сколько времени можно потратить на восстановление
+     */
+    SessionJournal(Path directory, CompactSessionStore store, long recoveryBudgetMs) throws IOException {
+        Files.createDirectories(directory);
+        this.store = store;
+        this.snapshotPath = directory.resolve("sessions.snapshot");
+        this.channel = FileChannel.open(directory.resolve("sessions.journal"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, JOURNAL_CAPACITY);
+
+        recover(recoveryBudgetMs);
+
+        store.setListener(this);
+        this.writer = new Thread(this::writeLoop, "session-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void onPut(long chatId, long session, String name) {
+        pending.add(new Change(TYPE_PUT, chatId, session, name));
+    }
+
+    @Override
+    public void onRemove(long chatId) {
+        pending.add(new Change(TYPE_REMOVE, chatId, Session.EMPTY, null));
+    }
+
+    /**
+     * Остановка фонового потока с записью всех накопленных изменений
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.force();
+        channel.close();
+    }
+
+    /**
+     * Восстановление сессий: снимок, затем хвост журнала того же поколения.
+     * Длина хвоста ограничена размером журнала и периодическим сжатием,
+     * поэтому время восстановления ограничено сверху; превышение бюджета
+     * только фиксируется в логе, данные при этом не отбрасываются.
+     * @param budgetMs Ожидаемое время восстановления
+     */
+    private void recover(long budgetMs) throws IOException {
+        long started = System.nanoTime();
+
+        long snapshotGeneration = loadSnapshot();
+        int replayed = 0;
+
+        journal.position(0);
+        if (journal.getInt() == JOURNAL_MAGIC && journal.getLong() == snapshotGeneration) {
+            generation = snapshotGeneration;
+            Change change;
+            while ((change = readRecord()) != null) {
+                if (change.type() == TYPE_PUT) {
+                    store.restore(change.chatId(), change.session(), change.name());
+                } else {
+                    store.remove(change.chatId());
+                }
+                replayed++;
+            }
+        } else {
+            // Журнал отсутствует или старше снимка - все его изменения уже есть в снимке
+            generation = snapshotGeneration;
+            resetJournal();
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        System.out.println("Восстановлено сессий: " + store.size() + " (из журнала: " + replayed
+                + ") за " + elapsedMs + " мс");
+        if (elapsedMs > budgetMs) {
+            System.err.println("Восстановление сессий заняло больше бюджета " + budgetMs + " мс");
+        }
+
+        if (replayed > 0) {
+            // Сразу сжимаем журнал, чтобы следующий старт читал только снимок
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Загрузка снимка в хранилище
+     * @return Поколение снимка (0, если снимка нет)
+     */
+    private long loadSnapshot() throws IOException {
+        if (!Files.isRegularFile(snapshotPath)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Поврежден снимок сессий " + snapshotPath);
+            }
+            long snapshotGeneration = in.readLong();
+            long chatId;
+            while ((chatId = in.readLong()) != 0) {
+                long session = in.readLong();
+                String name = in.readBoolean() ? in.readUTF() : null;
+                store.restore(chatId, session, name);
+            }
+            return snapshotGeneration;
+        } catch (EOFException e) {
+            throw new IOException("Обрезан снимок сессий " + snapshotPath, e);
+        }
+    }
+
+    /**
+     * Чтение очередной записи журнала с текущей позиции
+     * @return Изменение или null в конце журнала (или на недописанной записи)
+     */
+    private Change readRecord() {
+        int start = journal.position();
+        if (start + RECORD_PREFIX > JOURNAL_CAPACITY) {
+            return null;
+        }
+        int length = journal.getInt();
+        int crc = journal.getInt();
+        if (length <= 0 || start + RECORD_PREFIX + length > JOURNAL_CAPACITY) {
+            journal.position(start);
+            return null;
+        }
+
+        byte[] body = new byte[length];
+        journal.get(body);
+        CRC32 crc32 = new CRC32();
+        crc32.update(body);
+        if ((int) crc32.getValue() != crc) {
+            journal.position(start);
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte type = buffer.get();
+        long chatId = buffer.getLong();
+        long session = buffer.getLong();
+        int nameLength = buffer.getShort();
+        String name = nameLength < 0 ? null
+                : new String(body, buffer.position(), nameLength, StandardCharsets.UTF_8);
+        return new Change(type, chatId, session, name);
+    }
+
+    /**
+     * Цикл фонового потока: групповая запись изменений и периодическое сжатие
+     */
+    private void writeLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+            try {
+                drain();
+                if (System.currentTimeMillis() - lastSnapshotMs >= SNAPSHOT_INTERVAL_MS) {
+                    writeSnapshot();
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            drain();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Запись всех накопленных изменений в журнал
+     */
+    private void drain() throws IOException {
+        Change change;
+        while ((change = pending.poll()) != null) {
+            if (!append(change)) {
+                // Журнал заполнен: сжимаем его в снимок и пишем изменение в новый журнал
+                writeSnapshot();
+                append(change);
+            }
+        }
+    }
+
+    /**
+     * Добавление записи в отображенный журнал
+     * @return false если запись не помещается
+     */
+    private boolean append(Change change) {
+        byte[] name = change.name() == null ? null : change.name().getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 8 + 8 + 2 + (name == null ? 0 : name.length);
+        int start = journal.position();
+        if (start + RECORD_PREFIX + length + 4 > JOURNAL_CAPACITY) {
+            return false;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        body.put(change.type());
+        body.putLong(change.chatId());
+        body.putLong(change.session());
+        body.putShort((short) (name == null ? -1 : name.length));
+        if (name != null) {
+            body.put(name);
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(body.array());
+
+        // Сначала тело и crc, длина последней: недописанная запись читается как конец журнала
+        journal.position(start + 4);
+        journal.putInt((int) crc32.getValue());
+        journal.put(body.array());
+        journal.putInt(0);
+        journal.putInt(start, length);
+        journal.position(start + RECORD_PREFIX + length);
+        return true;
+    }
+
+    /**
+     * Сжатие: снимок всех сессий нового поколения и очистка журнала
+     */
+    private void writeSnapshot() throws IOException {
+        long nextGeneration = generation + 1;
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+
+        try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     Channels.newOutputStream(file)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(nextGeneration);
+            store.forEach((chatId, session, name) -> {
+                try {
+                    out.writeLong(chatId);
+                    out.writeLong(session);
+                    out.writeBoolean(name != null);
+                    if (name != null) {
+                        out.writeUTF(name);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // chatId 0 - конец снимка
+            out.writeLong(0);
+            out.flush();
+            file.force(true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Все записи текущего журнала вошли в снимок; изменения после начала обхода
+        // еще в очереди и попадут в журнал нового поколения
+        generation = nextGeneration;
+        resetJournal();
+        lastSnapshotMs = System.currentTimeMillis();
+    }
+
+    /**
+     * Очистка журнала с заголовком текущего поколения
+     */
+    private void resetJournal() {
+        journal.putInt(HEADER_SIZE, 0);
+        journal.putInt(0, JOURNAL_MAGIC);
+        journal.putLong(4, generation);
+        journal.position(HEADER_SIZE);
+        journal.force();
+    }
+}
@@ -0,0 +1,89 @@
+package Tutorial;
+
+/**
+ * Хранилище сессий диалога (ключ - chatId, значение - упакованная {@link Session} и имя).
+ * Реализации: {@link CompactSessionStore} в памяти процесса и {@link RemoteSessionStore},
+ * обращающееся по сети к общему {@link SessionStoreServer} (кластерный режим,
+ * когда обновления одного чата могут обрабатываться разными экземплярами бота).
+ */
+interface SessionStore {
+
+    /**
+     * Обход сессий хранилища
+     */
+    interface Visitor {
+        void visit(long chatId, long session, String name);
+    }
+
+    /**
+     * Получение сессии с отметкой обращения
+     * @param chatId ID чата
+     * @return Упакованная сессия или {@link Session#EMPTY}, если ее нет
+     */
+    long get(long chatId);
+
+    /**
+     * Сохранение сессии
+     * @param chatId ID чата (не 0)
+     * @param session Упакованная сессия
+     */
+    void put(long chatId, long session);
+
+    /**
+     * @param chatId ID чата
+     * @return Имя пользователя или null
+     */
+    String getName(long chatId);
+
+    /**
+     * Сохранение имени пользователя (сессия создается, если ее не было)
+     * @param chatId ID чата (не 0)
+     * @param name Имя
+     */
+    void putName(long chatId, String name);
+
+    /**
+     * Восстановление сессии целиком (при загрузке с диска или переносе между хранилищами)
+     * @param chatId ID чата (не 0)
+     * @param session Упакованная сессия
+     * @param name Имя или null
+     */
+    void restore(long chatId, long session, String name);
+
+    /**
+     * Удаление сессии
+     * @param chatId ID чата
+     */
+    void remove(long chatId);
+
+    /**
+     * Удаление всех сессий, к которым не обращались дольше TTL
+     */
+    void evictExpired();
+
+    /**
+     * Обход всех сессий
+     * @param visitor Получатель сессий
+     */
+    void forEach(Visitor visitor);
+
+    /**
+     * @return Количество сессий
+     */
+    int size();
+
+    /**
+     * @return Оценка памяти под таблицы хранилища в байтах (без самих строк имен)
+     */
+    long estimatedBytes();
+
+    /**
+     * @return Количество сессий, удаленных по TTL
+     */
+    long ttlEvictions();
+
+    /**
+     * @return Количество сессий, вытесненных из-за ограничения размера
+     */
+    long capacityEvictions();
+}
@@ -0,0 +1,266 @@
+package Tutorial;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общее хранилище сессий для кластерного режима: {@link CompactSessionStore}
+ * с журналом на диске, доступное экземплярам бота по TCP ({@link RemoteSessionStore}).
+ * Экземпляры бота при этом не хранят состояние диалогов, поэтому обновления чата
+ * можно переносить между ними без переноса сессий.
+ *
+ * <p>Протокол: сначала клиент предъявляет секрет кластера (WEBHOOK_SECRET, общий
+ * для входной точки и узлов) строкой modified UTF-8, сервер отвечает {@link #ACK}
+ * или закрывает соединение. Дальше запрос - [byte операция][аргументы], ответ -
+ * результат операции (см. константы OP_*); строки - modified UTF-8 с признаком null
+ * перед ними. На одном соединении запросы выполняются по очереди, соединений может быть много.
+ *
+ * <p>Запуск: java -cp Zazin_Bot.jar Tutorial.SessionStoreServer
+ * (адрес - SESSION_STORE_BIND, по умолчанию только локальный, порт - SESSION_STORE_PORT,
+ * остальные настройки - как у хранилища бота)
+ */
+public final class SessionStoreServer implements AutoCloseable {
+
+    // Операции протокола
+    static final byte OP_GET = 1;
+    static final byte OP_PUT = 2;
+    static final byte OP_GET_NAME = 3;
+    static final byte OP_PUT_NAME = 4;
+    static final byte OP_RESTORE = 5;
+    static final byte OP_REMOVE = 6;
+    static final byte OP_SCAN = 7;
+    static final byte OP_STATS = 8;
+
+    // Ответ на операцию без результата и на принятый секрет
+    static final byte ACK = 0;
+
+    // Сколько ждать секрет от нового соединения
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
+    private final CompactSessionStore store;
+    private final byte[] secret;
+    private final ServerSocket socket;
+    // Открытые соединения, чтобы закрыть их при остановке
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    /**
+     * @param bind Адрес, на котором слушает сервер
+     * @param port Порт (0 - любой свободный)
+     * @param secret Секрет кластера, который должен предъявить клиент
+     * @param store Хранилище, которое обслуживает сервер
+     */
+    SessionStoreServer(String bind, int port, String secret, CompactSessionStore store) throws IOException {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("Секрет кластера для хранилища сессий не задан");
+        }
+        this.store = store;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.socket = new ServerSocket();
+        this.socket.setReuseAddress(true);
+        this.socket.bind(new InetSocketAddress(bind, port));
+    }
+
+    void start() {
+        Thread.ofVirtual().name("session-store-accept").start(this::acceptLoop);
+    }
+
+    /**
+     * @return Фактический порт сервера (полезно при запуске на порту 0)
+     */
+    int port() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        socket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket connection = socket.accept();
+                connection.setTcpNoDelay(true);
+                connections.add(connection);
+                Thread.ofVirtual().name("session-store-connection").start(() -> serve(connection));
+            } catch (IOException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Обработка запросов одного соединения до его закрытия клиентом
+     * @param connection Соединение с экземпляром бота
+     */
+    private void serve(Socket connection) {
+        try (connection;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            if (!authenticate(connection, in, out)) {
+                return;
+            }
+            while (true) {
+                int op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                execute(op, in, out);
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // Клиент разорвал соединение или сервер остановлен
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * Проверка секрета, который клиент присылает первым после подключения
+     * @return true если секрет верный; иначе соединение нужно закрыть
+     */
+    private boolean authenticate(Socket connection, DataInputStream in, DataOutputStream out) throws IOException {
+        connection.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        String presented;
+        try {
+            presented = in.readUTF();
+        } catch (EOFException | SocketTimeoutException e) {
+            return false;
+        }
+        if (!MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8))) {
+            System.err.println("Хранилище сессий: неверный секрет от " + connection.getRemoteSocketAddress());
+            return false;
+        }
+        connection.setSoTimeout(0);
+        out.writeByte(ACK);
+        out.flush();
+        return true;
+    }
+
+    private void execute(int op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case OP_GET -> out.writeLong(store.get(in.readLong()));
+            case OP_PUT -> {
+                store.put(in.readLong(), in.readLong());
+                out.writeByte(ACK);
+            }
+            case OP_GET_NAME -> writeName(out, store.getName(in.readLong()));
+            case OP_PUT_NAME -> {
+                long chatId = in.readLong();
+                store.putName(chatId, in.readUTF());
+                out.writeByte(ACK);
+            }
+            case OP_RESTORE -> {
+                long chatId = in.readLong();
+                long session = in.readLong();
+                store.restore(chatId, session, readName(in));
+                out.writeByte(ACK);
+            }
+            case OP_REMOVE -> {
+                store.remove(in.readLong());
+                out.writeByte(ACK);
+            }
+            case OP_SCAN -> scan(out);
+            case OP_STATS -> {
+                out.writeInt(store.size());
+                out.writeLong(store.estimatedBytes());
+                out.writeLong(store.ttlEvictions());
+                out.writeLong(store.capacityEvictions());
+            }
+            default -> throw new IOException("Неизвестная операция хранилища сессий: " + op);
+        }
+    }
+
+    /**
+     * Выгрузка всех сессий: [long chatId][long сессия][имя] до chatId 0.
+     * Сессии сначала копируются в память, чтобы медленный клиент не держал
+     * блокировки сегментов хранилища, пока читает ответ.
+     */
+    private void scan(DataOutputStream out) throws IOException {
+        ByteArrayOutputStream copy = new ByteArrayOutputStream(Math.max(32, store.size() * 24));
+        DataOutputStream rows = new DataOutputStream(copy);
+        store.forEach((chatId, session, name) -> {
+            try {
+                rows.writeLong(chatId);
+                rows.writeLong(session);
+                writeName(rows, name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        copy.writeTo(out);
+        out.writeLong(0);
+    }
+
+    static void writeName(DataOutputStream out, String name) throws IOException {
+        out.writeBoolean(name != null);
+        if (name != null) {
+            out.writeUTF(name);
+        }
+    }
+
+    static String readName(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static void main(String[] args) {
+        try {
+            StartupTimer startup = new StartupTimer();
+            BotConfig config = BotConfig.load();
+            CompactSessionStore store = new CompactSessionStore(config.sessionMaxSize, config.sessionTtlMs);
+            SessionJournal journal = new SessionJournal(config.sessionDir, store, config.sessionRecoveryBudgetMs);
+            startup.phase("восстановление сессий");
+
+            SessionStoreServer server = new SessionStoreServer(config.sessionStoreBind, config.sessionStorePort,
+                    config.webhookSecret, store);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                    journal.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+            System.out.println("Хранилище сессий слушает " + config.sessionStoreBind + ":" + server.port());
+            startup.finish();
+
+            // Периодическое удаление давно неактивных сессий (экземпляры бота этого не делают)
+            while (true) {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                store.evictExpired();
+            }
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package Tutorial;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замер этапов запуска бота: время каждого этапа выводится в лог, чтобы
+ * было видно, что именно замедляет холодный старт (восстановление сессий,
+ * расчет матриц, индексация PDF и т.д.)
+ */
+final class StartupTimer {
+
+    private final long startedAt = System.nanoTime();
+    private long phaseStartedAt = startedAt;
+    // Итог запуска для метрики (0 - запуск еще идет); читается потоком выгрузки метрик
+    private volatile long finishedMillis;
+
+    /**
+     * Завершение этапа запуска
+     * @param phase Название этапа для лога
+     */
+    void phase(String phase) {
+        long now = System.nanoTime();
+        System.out.println("Запуск: " + phase + " - " + TimeUnit.NANOSECONDS.toMillis(now - phaseStartedAt) + " мс");
+        phaseStartedAt = now;
+    }
+
+    /**
+     * Завершение запуска: итог с момента создания таймера и с момента старта JVM
+     * (включает загрузку классов до main)
+     * @return Время с момента старта JVM, мс
+     */
+    long finish() {
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        long sinceJvmStart = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.println("Запуск завершен за " + total + " мс (с момента старта JVM - " + sinceJvmStart + " мс)");
+        finishedMillis = sinceJvmStart;
+        return sinceJvmStart;
+    }
+
+    /**
+     * @return Время запуска с момента старта JVM, мс, или 0, пока запуск не завершен
+     */
+    long finishedMillis() {
+        return finishedMillis;
+    }
+}
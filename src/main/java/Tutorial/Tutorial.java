@@ -1,100 +1,542 @@
 package Tutorial;
 
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
-import io.github.cdimascio.dotenv.Dotenv;
+import Tutorial.ReplyCatalog.Reply;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.Year;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 public class Tutorial extends TelegramLongPollingBot {
 
-    // Перечисление состояний диалога с пользователем
-    private enum UserState {
-        START,                  // Начальное состояние при команде /start
-        WAITING_FOR_GENDER,      // Ожидание выбора пола
-        WAITING_FOR_NAME,        // Ожидание ввода имени
-        CONFIRM_NAME,            // Подтверждение имени
-        WAITING_FOR_BIRTHDATE,   // Ожидание ввода даты рождения
-        CONFIRM_BIRTHDATE,       // Подтверждение даты рождения
-        WAITING_FOR_MORE         // Предложение дополнительной информации
+    // Настройки бота, прочитанные при старте
+    private final BotConfig config;
+
+    // Хранилище сессий пользователей: состояние, пол, имя, дата рождения (ключ - chatId)
+    private final SessionStore sessions;
+
+    // Журнал сессий на диске: незавершенные диалоги переживают перезапуск
+    // (null при общем хранилище - журнал ведет сервер хранилища)
+    private final SessionJournal sessionJournal;
+
+    // Заранее построенная таблица PDF файлов арканов
+    private final ArcanumAssets arcanumAssets;
+
+    // Матрицы судьбы для всех дат диапазона, рассчитанные при старте
+    private final DestinyMatrix destinyMatrix;
+
+    // Тексты ответов и клавиатуры, загруженные при старте
+    private final ReplyCatalog replies;
+
+    // Кэш file_id уже загруженных PDF, чтобы не загружать один и тот же файл повторно
+    private final DocumentCache documentCache;
+
+    // Ответы на inline-запросы "@ZazinBot ДД.ММ.ГГГГ" без диалога
+    private final InlineLookup inlineLookup;
+
+    // Параллельная обработка обновлений с сохранением порядка внутри чата
+    private final UpdateDispatcher dispatcher = new UpdateDispatcher();
+
+    // Таблица переходов диалога: обработчик по состоянию и виду ввода
+    private final DialogFlow flow;
+
+    // Ограничение скорости обновлений от чата и отбрасывание повторных нажатий кнопок
+    private final UpdateFilter updateFilter;
+    private final RedeliveryGuard redeliveries = new RedeliveryGuard();
+
+    // Ответ на webhook-обновление, которое обрабатывается в текущем потоке
+    private final ThreadLocal<WebhookReply> webhookReply = new ThreadLocal<>();
+
+    // Очередь исходящих запросов с учетом лимитов Telegram
+    private final OutboundQueue outbound;
+
+    // Пул соединений с Bot API (null - запросы выполняет клиент библиотеки)
+    private final BotTransport transport;
+
+    // События воронки диалога для аналитики (отчет - FunnelReport)
+    private final FunnelLog funnel;
+
+    // Рассылка всем чатам по команде администратора
+    private final Broadcaster broadcaster;
+
+    // Метрики бота (выгружаются на /metrics, если задан METRICS_PORT)
+    private final Metrics metrics = new Metrics();
+
+    // Индексы значений меток в массивах метрик
+    private static final int API_SEND_MESSAGE = 0;
+    private static final int API_SEND_DOCUMENT = 1;
+    private static final int API_ANSWER_CALLBACK = 2;
+    private static final int API_ANSWER_INLINE = 3;
+    private static final int DOCUMENT_FROM_CACHE = 0;
+    private static final int DOCUMENT_UPLOADED = 1;
+    private static final int ERROR_HANDLER = 0;
+    private static final int ERROR_SEND = 1;
+    private static final int ERROR_DOCUMENT = 2;
+    private static final int ERROR_STORAGE = 3;
+
+    // На сколько лет вперед принимаются заявки на прогноз
+    private static final int FORECAST_YEARS_AHEAD = 5;
+
+    // Переходы в каждое состояние диалога
+    private final Metrics.Counter[] transitions;
+
+    // Время обработки обновления по состоянию диалога, в котором оно пришло
+    private final Metrics.Histogram[] handlerLatency;
+
+    // Время выполнения запросов к Bot API (без ожидания в очереди)
+    private final Metrics.Histogram[] apiLatency;
+
+    // Размер загружаемых PDF и отправки по file_id / с загрузкой
+    private final Metrics.Histogram uploadSize;
+    private final Metrics.Counter[] documentSends;
+
+    // Ошибки по месту возникновения
+    private final Metrics.Counter[] errors;
+
+    // Обновления, отброшенные фильтром: превышение скорости и повторные нажатия
+    private final Metrics.Counter[] shedUpdates;
+
+    // Inline-запросы: с результатами и с текстом, не похожим на дату
+    private final Metrics.Counter[] inlineQueries;
+
+    public Tutorial() throws IOException {
+        this(BotConfig.load());
+    }
+
+    /**
+     * Создание бота с явно заданными настройками (например, для нагрузочного теста)
+     * @param config Настройки бота
+     */
+    Tutorial(BotConfig config) throws IOException {
+        this(config, new StartupTimer());
     }
 
-    // Хранилище состояний пользователей (ключ - chatId)
-    private Map<Long, UserState> userStates = new HashMap<>();
+    /**
+     * @param config Настройки бота
+     * @param startup Замер этапов запуска
+     */
+    Tutorial(BotConfig config, StartupTimer startup) throws IOException {
+        super(createOptions(config));
+        this.config = config;
+        // Без токена бот бесполезен - проверяем сразу, а не при первом запросе
+        config.requireToken();
+
+        // Общее хранилище сессий (host:port) для кластерного режима, иначе - в памяти процесса
+        if (config.sessionStore != null) {
+            sessions = new RemoteSessionStore(config.sessionStore, config.webhookSecret, config.sessionStoreTimeoutMs);
+            sessionJournal = null;
+        } else {
+            CompactSessionStore local = new CompactSessionStore(config.sessionMaxSize, config.sessionTtlMs);
+
+            // Восстанавливаем сессии до приема первых обновлений
+            sessionJournal = new SessionJournal(config.sessionDir, local, config.sessionRecoveryBudgetMs);
+            sessions = local;
+        }
+        startup.phase("хранилище сессий");
+
+        destinyMatrix = new DestinyMatrix(config.matrixMinYear, config.matrixMaxYear);
+        startup.phase("матрицы судьбы");
+
+        // Тексты можно переопределить своим файлом без пересборки
+        replies = ReplyCatalog.load(config.repliesFile);
+        documentCache = new DocumentCache(config.fileIdIndex);
+        startup.phase("тексты и кэш file_id");
+
+        // Лимиты Telegram: около 30 сообщений в секунду на бота, 1 в секунду на чат
+        // Запросы к Bot API - через клиент библиотеки или, если выбран BOT_HTTP_TRANSPORT=jdk, через свой пул с HTTP/2
+        transport = config.httpTransport
+                ? new BotTransport(getBaseUrl(), config.http2, config.httpMaxRequests, config.httpConnectTimeoutMs,
+                        config.httpRequestTimeoutMs, config.httpUploadTimeoutMs)
+                : null;
+
+        outbound = new OutboundQueue(config.outboundGlobalRate, config.outboundChatRate, config.outboundChatBurst,
+                config.outboundMaxQueuePerChat, config.outboundMaxAttempts);
+
+        // Пользователь не набирает и не нажимает быстрее; лишнее - двойные нажатия и спам
+        updateFilter = new UpdateFilter(config.updateChatRate, config.updateChatBurst);
+
+        flow = createFlow();
 
-    // Хранилище данных пользователей (имя, пол, дата рождения)
-    private Map<Long, Map<String, String>> userData = new HashMap<>();
+        funnel = new FunnelLog(config.funnelDir, config.funnelBuffer);
 
-    // Базовый путь к папке с PDF файлами арканов
-    private static final String PDF_BASE_PATH = "C:\\Users\\User\\IdeaProjects\\Zazin_Bot\\pdfs\\";
+        // Скорость рассылки ниже общего лимита, чтобы ответам в диалогах хватало запаса
+        broadcaster = new Broadcaster(config.broadcastDir, sessions, this::sendBroadcastMessage,
+                config.broadcastRate, this::reportBroadcast);
+
+        String[] states = Arrays.stream(UserState.values()).map(state -> state.name().toLowerCase()).toArray(String[]::new);
+        transitions = metrics.counters("bot_state_transitions_total",
+                "Переходы диалога в состояние", "state", states);
+        handlerLatency = metrics.histograms("bot_handler_duration_seconds",
+                "Время обработки обновления по состоянию диалога до обработки",
+                Metrics.LATENCY_BUCKETS, Metrics.NANOS_PER_SECOND, "state", states);
+        apiLatency = metrics.histograms("bot_api_request_duration_seconds",
+                "Время выполнения запроса к Bot API", Metrics.LATENCY_BUCKETS, Metrics.NANOS_PER_SECOND,
+                "method", "sendMessage", "sendDocument", "answerCallbackQuery", "answerInlineQuery");
+        uploadSize = metrics.histogram("bot_document_upload_bytes",
+                "Размер загружаемых PDF", Metrics.SIZE_BUCKETS, 1);
+        documentSends = metrics.counters("bot_document_sends_total",
+                "Отправленные PDF по file_id и с загрузкой файла", "source", "cache", "upload");
+        errors = metrics.counters("bot_errors_total",
+                "Ошибки по месту возникновения", "stage", "handler", "send", "document", "storage");
+        shedUpdates = metrics.counters("bot_updates_shed_total",
+                "Обновления, отброшенные до обработки", "reason", "rate_limited", "duplicate", "redelivered");
+        inlineQueries = metrics.counters("bot_inline_queries_total",
+                "Inline-запросы по результату разбора даты", "result", "answered", "invalid");
+        metrics.register("bot_update_filter_chats", "Чаты с состоянием в фильтре обновлений", "gauge",
+                updateFilter::size);
+        if (sessions instanceof RemoteSessionStore remote) {
+            // Пока хранилище недоступно, метрики сессий ниже - последние известные значения
+            metrics.register("bot_session_store_up", "Доступно ли общее хранилище сессий", "gauge",
+                    () -> remote.reachable() ? 1 : 0);
+        }
+        metrics.register("bot_sessions_active", "Сессии в памяти", "gauge", sessions::size);
+        metrics.register("bot_sessions_memory_bytes", "Оценка памяти хранилища сессий", "gauge",
+                sessions::estimatedBytes);
+        metrics.register("bot_session_ttl_evictions_total", "Сессии, удаленные по TTL", "counter",
+                sessions::ttlEvictions);
+        metrics.register("bot_session_capacity_evictions_total", "Сессии, вытесненные при переполнении",
+                "counter", sessions::capacityEvictions);
+        metrics.register("bot_funnel_events_written_total", "События воронки, записанные на диск", "counter",
+                funnel::written);
+        metrics.register("bot_funnel_events_dropped_total", "События воронки, отброшенные при переполнении буфера",
+                "counter", funnel::dropped);
+        metrics.register("bot_broadcast_sent_total", "Доставленные сообщения рассылок", "counter",
+                broadcaster::sent);
+        metrics.register("bot_broadcast_pruned_total", "Чаты, заблокировавшие бота и удаленные при рассылке",
+                "counter", broadcaster::pruned);
+        metrics.register("bot_outbound_queue_depth", "Запросы в исходящей очереди", "gauge", outbound::depth);
+        metrics.register("bot_outbound_sent_total", "Выполненные запросы к Bot API", "counter", outbound::sent);
+        metrics.register("bot_outbound_failed_total", "Запросы, завершившиеся ошибкой", "counter", outbound::failed);
+        metrics.register("bot_outbound_dropped_total", "Запросы, отброшенные из-за переполнения очереди",
+                "counter", outbound::dropped);
+        metrics.register("bot_outbound_retries_total", "Повторы запросов", "counter", outbound::retried);
+        metrics.register("bot_outbound_rate_limited_total", "Ответы 429 Too Many Requests", "counter",
+                outbound::rateLimited);
+
+        if (transport != null) {
+            metrics.register("bot_http_requests_total", "Запросы к Bot API через пул соединений", "counter",
+                    transport::requests);
+            metrics.register("bot_http_requests_http2_total", "Запросы, выполненные по HTTP/2", "counter",
+                    transport::http2Requests);
+            metrics.register("bot_http_connections_total", "Попытки открыть TLS-соединение с Bot API", "counter",
+                    transport::connections);
+            metrics.register("bot_http_requests_in_flight", "Запросы к Bot API, ожидающие ответа", "gauge",
+                    transport::inFlight);
+            metrics.register("bot_http_requests_queued", "Запросы, ждущие свободного места в пуле", "gauge",
+                    transport::queued);
+            metrics.register("bot_http_upload_bytes_total", "Загруженные в Bot API байты файлов", "counter",
+                    transport::uploadedBytes);
+        }
+
+        startup.phase("очереди и метрики");
+
+        // Папка с PDF файлами арканов (по умолчанию pdfs/ рядом с ботом)
+        arcanumAssets = new ArcanumAssets(config.pdfDir);
+        // Новые и измененные PDF подхватываются без перезапуска
+        arcanumAssets.startWatching();
+        inlineLookup = new InlineLookup(destinyMatrix, arcanumAssets, documentCache, replies, config.inlineCacheSeconds);
+        startup.phase("PDF арканов");
+
+        // Периодическое удаление давно неактивных сессий
+        Thread.ofVirtual().name("session-sweeper").start(this::sweepSessions);
+
+        // Рассылка, прерванная остановкой бота, продолжается с контрольной точки
+        broadcaster.resume();
+        startup.phase("рассылка");
+    }
 
     /**
-     * Основной метод обработки входящих обновлений от Telegram
-     * @param update Входящее обновление (сообщение или callback)
+     * Прием входящих обновлений от Telegram: обработка уходит в очередь чата,
+     * чтобы медленный ответ одному пользователю не задерживал остальных
+     * @param update Входящее обновление (сообщение, callback или inline-запрос)
      */
     @Override
     public void onUpdateReceived(Update update) {
-        // Если получено текстовое сообщение
-        if (update.hasMessage() && update.getMessage().hasText()) {
-            handleTextMessage(update);
+        // Inline-запрос не привязан к чату и не меняет сессию - отвечаем сразу, мимо очередей чатов
+        if (update.hasInlineQuery()) {
+            answerInlineQuery(update.getInlineQuery());
+            return;
         }
-        // Если получен callback от нажатия кнопки
-        else if (update.hasCallbackQuery()) {
-            handleCallbackQuery(update);
+        if (admit(update)) {
+            dispatcher.dispatch(UpdateDispatcher.chatIdOf(update), () -> handleUpdate(update));
         }
     }
 
     /**
-     * Обработка текстовых сообщений от пользователя
-     * @param update Объект входящего сообщения
+     * Прием обновления через webhook: обработка та же, но последнее ответное
+     * сообщение может уйти прямо в HTTP-ответе
+     * @param update Входящее обновление
+     * @return Ответ, который ожидает webhook-сервер
      */
-    private void handleTextMessage(Update update) {
-        String messageText = update.getMessage().getText();
-        long chatId = update.getMessage().getChatId();
-
-        // Создаем объект для ответного сообщения
-        SendMessage message = new SendMessage();
-        message.setChatId(String.valueOf(chatId));
-
-        // Получаем текущее состояние пользователя
-        UserState userState = userStates.getOrDefault(chatId, UserState.START);
+    WebhookReply onWebhookUpdate(Update update) {
+        WebhookReply reply = new WebhookReply(this::enqueue);
+        // Повторная доставка того, что уже принято (в том числе после таймаута на входной точке), - только подтверждаем
+        if (update.getUpdateId() != null && !redeliveries.firstDelivery(update.getUpdateId())) {
+            shedUpdates[2].increment();
+            reply.finish(true);
+            return reply;
+        }
+        if (update.hasInlineQuery()) {
+            answerInlineQuery(update.getInlineQuery());
+            reply.finish(true);
+            return reply;
+        }
+        if (!admit(update)) {
+            reply.finish(true);
+            return reply;
+        }
+        dispatcher.dispatch(UpdateDispatcher.chatIdOf(update), () -> {
+            webhookReply.set(reply);
+            try {
+                handleUpdate(update);
+            } finally {
+                webhookReply.remove();
+                // В HTTP-ответ можно вернуть сообщение, только если предыдущие уже отправлены
+                reply.finish(outbound.isIdle(UpdateDispatcher.chatIdOf(update)));
+            }
+        });
+        return reply;
+    }
 
-        // Обработка команды /start - начало диалога
-        if (messageText.equalsIgnoreCase("/start")) {
-            message.setText("Привет! Ты мужчина или девушка?");
-            message.setReplyMarkup(createGenderKeyboard()); // Добавляем кнопки выбора пола
-            userStates.put(chatId, UserState.WAITING_FOR_GENDER);
+    /**
+     * Проверка обновления фильтром до постановки в очередь. На нажатие кнопки
+     * отвечаем сразу, даже если оно отброшено, чтобы у пользователя пропал индикатор загрузки.
+     * Узел кластера обновления не фильтрует: это уже сделала входная точка.
+     * @param update Входящее обновление
+     * @return true если обновление нужно обработать
+     */
+    private boolean admit(Update update) {
+        if (update.hasCallbackQuery()) {
+            answerCallback(update.getCallbackQuery().getId());
         }
-        // Обработка ввода имени
-        else if (userState == UserState.WAITING_FOR_NAME) {
-            handleNameInput(chatId, messageText, message);
+        if (config.clusterWorker) {
+            return true;
         }
-        // Обработка ввода даты рождения
-        else if (userState == UserState.WAITING_FOR_BIRTHDATE) {
-            handleBirthdateInput(chatId, messageText, message);
+        UpdateFilter.Verdict verdict = updateFilter.admit(update);
+        if (verdict == UpdateFilter.Verdict.ACCEPT) {
+            return true;
         }
-        // Неизвестная команда/сообщение
-        else {
-            message.setText("Я не понимаю. Напиши /start, чтобы начать.");
+        shedUpdates[verdict == UpdateFilter.Verdict.RATE_LIMITED ? 0 : 1].increment();
+        return false;
+    }
+
+    /**
+     * Ответ на нажатие кнопки мимо очереди чата: он не должен ждать отправки документа
+     * @param callbackQueryId ID нажатия
+     */
+    private void answerCallback(String callbackQueryId) {
+        AnswerCallbackQuery answer = new AnswerCallbackQuery();
+        answer.setCallbackQueryId(callbackQueryId);
+        timed(apiLatency[API_ANSWER_CALLBACK], () -> executeAsync(answer))
+                .exceptionally(error -> {
+                    errors[ERROR_SEND].increment();
+                    error.printStackTrace();
+                    return null;
+                });
+    }
+
+    /**
+     * Ответ на inline-запрос: аркан по дате рождения из текста запроса.
+     * Ответ не зависит от пользователя, поэтому Telegram кэширует его для всех,
+     * кто спросит ту же дату (см. {@link InlineLookup})
+     * @param query Inline-запрос
+     */
+    private void answerInlineQuery(InlineQuery query) {
+        AnswerInlineQuery answer;
+        try {
+            answer = inlineLookup.answer(query.getId(), query.getQuery());
+        } catch (RuntimeException e) {
+            errors[ERROR_HANDLER].increment();
+            e.printStackTrace();
+            return;
         }
+        inlineQueries[answer.getResults().isEmpty() ? 1 : 0].increment();
+        timed(apiLatency[API_ANSWER_INLINE], () -> executeAsync(answer))
+                .exceptionally(error -> {
+                    errors[ERROR_SEND].increment();
+                    error.printStackTrace();
+                    return null;
+                });
+    }
 
-        // Отправляем сформированный ответ
+    /**
+     * Основной метод обработки входящих обновлений от Telegram: вид ввода
+     * определяется один раз, обработчик выбирается по таблице переходов
+     * @param update Входящее обновление (сообщение или callback)
+     */
+    private void handleUpdate(Update update) {
+        long started = System.nanoTime();
+        UserState state = UserState.START;
         try {
-            execute(message);
-        } catch (TelegramApiException e) {
+            long chatId = UpdateDispatcher.chatIdOf(update);
+            state = getState(chatId);
+            String text = null;
+            DialogFlow.Input input = null;
+            // Если получено текстовое сообщение
+            if (update.hasMessage() && update.getMessage().hasText()) {
+                text = update.getMessage().getText();
+                input = textInput(chatId, text);
+            }
+            // Если получен callback от нажатия кнопки
+            else if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+                input = DialogFlow.buttonInput(update.getCallbackQuery().getData());
+            }
+            if (input != null) {
+                SendMessage message = new SendMessage();
+                message.setChatId(String.valueOf(chatId));
+                flow.dispatch(state, input, chatId, text, message);
+                // Отправляем ответ если он был сформирован
+                if (message.getText() != null) {
+                    send(message);
+                }
+            }
+        } catch (RuntimeException e) {
+            errors[ERROR_HANDLER].increment();
             e.printStackTrace();
+        } finally {
+            updateFilter.done(update);
+            handlerLatency[state.ordinal()].observeSince(started);
         }
     }
 
+    /**
+     * Вид текстового ввода
+     * @param chatId ID чата
+     * @param text Текст сообщения
+     * @return Команда администратора, /start или произвольный текст
+     */
+    private DialogFlow.Input textInput(long chatId, String text) {
+        // Команды рассылки доступны только администраторам
+        if (text.startsWith("/broadcast") && config.adminChatIds.contains(chatId)) {
+            return DialogFlow.Input.ADMIN_COMMAND;
+        }
+        // /start с параметром приходит по кнопке перехода в диалог из inline-режима
+        return text.equalsIgnoreCase("/start") || text.regionMatches(true, 0, "/start ", 0, 7)
+                ? DialogFlow.Input.START : DialogFlow.Input.TEXT;
+    }
+
+    /**
+     * Таблица переходов диалога
+     * @return Обработчики для пар (состояние, ввод)
+     */
+    private DialogFlow createFlow() {
+        DialogFlow.Builder table = DialogFlow.builder()
+                .onAnyState(DialogFlow.Input.ADMIN_COMMAND, this::handleBroadcastCommand)
+                .onAnyState(DialogFlow.Input.START, this::handleStart)
+                // Неизвестная команда/сообщение; нажатия кнопок не к месту игнорируются
+                .onAnyState(DialogFlow.Input.TEXT, (chatId, text, message) -> message.setText(replies.text(Reply.UNKNOWN)))
+                .on(UserState.WAITING_FOR_GENDER, DialogFlow.Input.GENDER_MALE,
+                        (chatId, text, message) -> handleGenderSelection(chatId, Gender.MALE, message))
+                .on(UserState.WAITING_FOR_GENDER, DialogFlow.Input.GENDER_FEMALE,
+                        (chatId, text, message) -> handleGenderSelection(chatId, Gender.FEMALE, message))
+                .on(UserState.WAITING_FOR_NAME, DialogFlow.Input.TEXT, this::handleNameInput)
+                .on(UserState.CONFIRM_NAME, DialogFlow.Input.YES,
+                        (chatId, text, message) -> handleNameConfirmation(chatId, true, message))
+                .on(UserState.CONFIRM_NAME, DialogFlow.Input.NO,
+                        (chatId, text, message) -> handleNameConfirmation(chatId, false, message))
+                .on(UserState.WAITING_FOR_BIRTHDATE, DialogFlow.Input.TEXT, this::handleBirthdateInput)
+                .on(UserState.CONFIRM_BIRTHDATE, DialogFlow.Input.YES,
+                        (chatId, text, message) -> handleBirthdateConfirmation(chatId, true, message))
+                .on(UserState.CONFIRM_BIRTHDATE, DialogFlow.Input.NO,
+                        (chatId, text, message) -> handleBirthdateConfirmation(chatId, false, message))
+                .on(UserState.WAITING_FOR_MORE, DialogFlow.Input.YES,
+                        (chatId, text, message) -> handleMoreInfoRequest(chatId, true, message))
+                .on(UserState.WAITING_FOR_MORE, DialogFlow.Input.NO,
+                        (chatId, text, message) -> handleMoreInfoRequest(chatId, false, message));
+        // Заявка на прогноз на год - кнопка под описанием услуг
+        if (config.forecastEnabled) {
+            table.on(UserState.WAITING_FOR_MORE, DialogFlow.Input.FORECAST, this::handleForecastRequest)
+                    .on(UserState.WAITING_FOR_FORECAST_YEAR, DialogFlow.Input.TEXT, this::handleForecastYearInput)
+                    .on(UserState.CONFIRM_FORECAST, DialogFlow.Input.YES,
+                            (chatId, text, message) -> handleForecastConfirmation(chatId, true, message))
+                    .on(UserState.CONFIRM_FORECAST, DialogFlow.Input.NO,
+                            (chatId, text, message) -> handleForecastConfirmation(chatId, false, message));
+        }
+        return table.build();
+    }
+
+    /**
+     * Обработка команды /start - начало диалога
+     * @param chatId ID чата
+     * @param text Текст команды
+     * @param message Объект сообщения для ответа
+     */
+    private void handleStart(long chatId, String text, SendMessage message) {
+        message.setText(replies.text(Reply.START));
+        message.setReplyMarkup(replies.genderKeyboard()); // Добавляем кнопки выбора пола
+        setState(chatId, UserState.WAITING_FOR_GENDER);
+    }
+
+    /**
+     * Команды рассылки: /broadcast текст, /broadcast_status, /broadcast_cancel
+     * @param chatId ID чата администратора
+     * @param command Текст команды
+     * @param message Объект сообщения для ответа
+     */
+    private void handleBroadcastCommand(long chatId, String command, SendMessage message) {
+        if (command.equals("/broadcast_status")) {
+            Broadcaster.Progress progress = broadcaster.progress();
+            message.setText(progress == null ? replies.text(Reply.BROADCAST_IDLE) : replies.text(Reply.BROADCAST_STATUS,
+                    String.valueOf(progress.done()), String.valueOf(progress.total()), String.valueOf(progress.sent()),
+                    String.valueOf(progress.pruned()), String.valueOf(progress.failed())));
+        } else if (command.equals("/broadcast_cancel")) {
+            message.setText(replies.text(broadcaster.cancel() ? Reply.BROADCAST_CANCELLED : Reply.BROADCAST_IDLE));
+        } else if (command.startsWith("/broadcast ") && !command.substring("/broadcast ".length()).isBlank()) {
+            try {
+                Broadcaster.Progress progress = broadcaster.start(chatId, command.substring("/broadcast ".length()).strip());
+                message.setText(progress == null ? replies.text(Reply.BROADCAST_BUSY)
+                        : replies.text(Reply.BROADCAST_STARTED, String.valueOf(progress.total())));
+            } catch (IOException | RuntimeException e) {
+                errors[ERROR_STORAGE].increment();
+                e.printStackTrace();
+                message.setText(replies.text(Reply.BROADCAST_ERROR));
+            }
+        } else {
+            message.setText(replies.text(Reply.BROADCAST_USAGE));
+        }
+    }
+
+    /**
+     * Отправка сообщения рассылки через общую очередь исходящих запросов
+     * @param chatId ID чата получателя
+     * @param text Текст рассылки
+     * @return Результат запроса после всех повторов
+     */
+    private CompletableFuture<?> sendBroadcastMessage(long chatId, String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId(String.valueOf(chatId));
+        message.setText(text);
+        return outbound.submit(chatId, () -> timed(apiLatency[API_SEND_MESSAGE], () -> executeAsync(message)));
+    }
+
+    /**
+     * Итог рассылки администратору, который ее запустил
+     * @param progress Состояние завершенной рассылки
+     */
+    private void reportBroadcast(Broadcaster.Progress progress) {
+        sendTextMessage(progress.adminChatId(), replies.text(Reply.BROADCAST_FINISHED,
+                String.valueOf(progress.total()), String.valueOf(progress.sent()),
+                String.valueOf(progress.pruned()), String.valueOf(progress.failed())));
+    }
+
     /**
      * Обработка ввода имени пользователя
      * @param chatId ID чата
@@ -102,14 +544,14 @@ public class Tutorial extends TelegramLongPollingBot {
      * @param message Объект сообщения для ответа
      */
     private void handleNameInput(long chatId, String name, SendMessage message) {
-        if (isValidName(name)) {
+        if (InputParser.isValidName(name)) {
             // Сохраняем имя и запрашиваем подтверждение
-            storeUserData(chatId, "name", name);
-            message.setText("Твое имя: " + name + "?");
-            message.setReplyMarkup(createConfirmationKeyboard());
-            userStates.put(chatId, UserState.CONFIRM_NAME);
+            sessions.putName(chatId, name);
+            message.setText(replies.text(Reply.NAME_CONFIRM, name));
+            message.setReplyMarkup(replies.confirmationKeyboard());
+            setState(chatId, UserState.CONFIRM_NAME);
         } else {
-            message.setText("Пожалуйста, введи корректное имя (только буквы, 2-50 символов).");
+            message.setText(replies.text(Reply.NAME_INVALID));
         }
     }
 
@@ -120,306 +562,296 @@ public class Tutorial extends TelegramLongPollingBot {
      * @param message Объект сообщения для ответа
      */
     private void handleBirthdateInput(long chatId, String birthDate, SendMessage message) {
-        // Проверяем формат даты (ДД.ММ.ГГГГ)
-        if (birthDate.matches("\\d{2}\\.\\d{2}\\.\\d{4}")) {
-            storeUserData(chatId, "birthdate", birthDate);
-            String gender = getUserData(chatId, "gender");
+        // Проверяем формат (ДД.ММ.ГГГГ) и что такая дата есть в календаре
+        int date = InputParser.parseBirthdate(birthDate);
+        if (date != InputParser.INVALID) {
+            sessions.put(chatId, Session.withBirthdate(sessions.get(chatId),
+                    InputParser.day(date), InputParser.month(date), InputParser.year(date)));
             // Формируем вопрос с учетом пола
-            message.setText(gender.equals("gender_male")
-                    ? "Ты родился " + birthDate + "?"
-                    : "Ты родилась " + birthDate + "?");
-            message.setReplyMarkup(createConfirmationKeyboard());
-            userStates.put(chatId, UserState.CONFIRM_BIRTHDATE);
+            message.setText(replies.text(Reply.BIRTHDATE_CONFIRM, getGender(chatId), birthDate));
+            message.setReplyMarkup(replies.confirmationKeyboard());
+            setState(chatId, UserState.CONFIRM_BIRTHDATE);
         } else {
-            message.setText("Пожалуйста, введи дату в формате ДД.ММ.ГГГГ.");
-        }
-    }
-
-    /**
-     * Обработка нажатий на inline-кнопки
-     * @param update Объект callback-запроса
-     */
-    private void handleCallbackQuery(Update update) {
-        String callbackData = update.getCallbackQuery().getData();
-        long chatId = update.getCallbackQuery().getMessage().getChatId();
-
-        SendMessage message = new SendMessage();
-        message.setChatId(String.valueOf(chatId));
-
-        // Получаем текущее состояние пользователя
-        UserState userState = userStates.getOrDefault(chatId, UserState.START);
-
-        // Обработка в зависимости от состояния
-        switch (userState) {
-            case WAITING_FOR_GENDER:
-                handleGenderSelection(chatId, callbackData, message);
-                break;
-            case CONFIRM_NAME:
-                handleNameConfirmation(chatId, callbackData, message);
-                break;
-            case CONFIRM_BIRTHDATE:
-                handleBirthdateConfirmation(chatId, callbackData, message);
-                break;
-            case WAITING_FOR_MORE:
-                handleMoreInfoRequest(chatId, callbackData, message);
-                break;
-        }
-
-        // Отправляем ответ если он был сформирован
-        try {
-            if (message.getText() != null) {
-                execute(message);
-            }
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
+            message.setText(replies.text(Reply.BIRTHDATE_INVALID));
         }
     }
 
     /**
      * Обработка выбора пола
      * @param chatId ID чата
-     * @param gender Выбранный пол ("gender_male" или "gender_female")
+     * @param gender Выбранный пол
      * @param message Объект сообщения для ответа
      */
-    private void handleGenderSelection(long chatId, String gender, SendMessage message) {
-        storeUserData(chatId, "gender", gender);
-        message.setText("Как тебя зовут?");
-        userStates.put(chatId, UserState.WAITING_FOR_NAME);
+    private void handleGenderSelection(long chatId, Gender gender, SendMessage message) {
+        sessions.put(chatId, Session.withGender(sessions.get(chatId), gender));
+        message.setText(replies.text(Reply.NAME_PROMPT));
+        setState(chatId, UserState.WAITING_FOR_NAME);
     }
 
     /**
      * Обработка подтверждения имени
      * @param chatId ID чата
-     * @param confirmation Результат подтверждения ("confirm_yes" или "confirm_no")
+     * @param confirmed true если пользователь нажал "Да"
      * @param message Объект сообщения для ответа
      */
-    private void handleNameConfirmation(long chatId, String confirmation, SendMessage message) {
-        if (confirmation.equals("confirm_yes")) {
-            String gender = getUserData(chatId, "gender");
-            message.setText(gender.equals("gender_male")
-                    ? "Отлично! Когда ты родился? (ДД.ММ.ГГГГ)"
-                    : "Отлично! Когда ты родилась? (ДД.ММ.ГГГГ)");
-            userStates.put(chatId, UserState.WAITING_FOR_BIRTHDATE);
+    private void handleNameConfirmation(long chatId, boolean confirmed, SendMessage message) {
+        if (confirmed) {
+            message.setText(replies.text(Reply.BIRTHDATE_PROMPT, getGender(chatId)));
+            setState(chatId, UserState.WAITING_FOR_BIRTHDATE);
         } else {
-            message.setText("Хорошо, попробуем ещё раз. Как тебя зовут?");
-            userStates.put(chatId, UserState.WAITING_FOR_NAME);
+            message.setText(replies.text(Reply.NAME_RETRY));
+            setState(chatId, UserState.WAITING_FOR_NAME);
         }
     }
 
     /**
      * Обработка подтверждения даты рождения и отправка соответствующего аркана
      * @param chatId ID чата
-     * @param confirmation Результат подтверждения
+     * @param confirmed true если пользователь нажал "Да"
      * @param message Объект сообщения для ответа
      */
-    private void handleBirthdateConfirmation(long chatId, String confirmation, SendMessage message) {
-        if (confirmation.equals("confirm_yes")) {
-            String birthDate = getUserData(chatId, "birthdate");
+    private void handleBirthdateConfirmation(long chatId, boolean confirmed, SendMessage message) {
+        if (confirmed) {
             // Отправляем PDF с арканом
-            sendArcanumDocument(chatId, birthDate);
+            sendArcanumDocument(chatId, sessions.get(chatId));
 
-            message.setText("Хотите узнать больше о своем аркане?");
-            message.setReplyMarkup(createConfirmationKeyboard());
-            userStates.put(chatId, UserState.WAITING_FOR_MORE);
+            message.setText(replies.text(Reply.MORE_PROMPT));
+            message.setReplyMarkup(replies.confirmationKeyboard());
+            setState(chatId, UserState.WAITING_FOR_MORE);
         } else {
-            message.setText("Хорошо, попробуем ещё раз. Введи дату в формате ДД.ММ.ГГГГ");
-            userStates.put(chatId, UserState.WAITING_FOR_BIRTHDATE);
+            message.setText(replies.text(Reply.BIRTHDATE_RETRY));
+            setState(chatId, UserState.WAITING_FOR_BIRTHDATE);
         }
     }
 
     /**
      * Обработка запроса дополнительной информации
      * @param chatId ID чата
-     * @param confirmation Результат подтверждения
+     * @param accepted true если пользователь нажал "Да"
      * @param message Объект сообщения для ответа
      */
-    private void handleMoreInfoRequest(long chatId, String confirmation, SendMessage message) {
-        if (confirmation.equals("confirm_yes")) {
-            try {
-                // Первое сообщение с описанием услуг
-                SendMessage contactMessage = new SendMessage();
-                contactMessage.setChatId(String.valueOf(chatId));
-                contactMessage.setText("🌟 Открой новые горизонты своей жизни с моими разборами! \n\n" +
-                        "📅 Персональный прогноз на год\n" +
-                        "Представь, что ты держишь в руках карту сокровищ, где каждый месяц твоего года раскрывает свои тайны. Этот прогноз — твой компас в океане возможностей.\n\n" +
-                        "✨ Что ты получишь:\n" +
-                        "- Характеристику каждого месяца\n" +
-                        "- Прогноз по ключевым сферам: деньги, отношения, здоровье\n" +
-                        "- Персональные рекомендации на каждый день\n\n" +
-                        "Это твой шанс принимать верные решения и жить в гармонии с энергиями Вселенной.\n\n" +
-                        "🌙 Прогноз на месяц\n" +
-                        "Это не просто предсказание, а практическое руководство к действию.\n\n" +
-                        "📆 Узнай энергию каждого дня, чтобы:\n" +
-                        "- Выбирать идеальное время для важных встреч\n" +
-                        "- Начинать проекты с максимальной эффективностью\n" +
-                        "- Восстанавливать силы в нужный момент\n\n" +
-                        "🗺 Дорожная карта\n" +
-                        "Представь панораму своей жизни как осмысленное путешествие души.\n\n" +
-                        "✨ Что входит:\n" +
-                        "- Детальная карта жизненного пути\n" +
-                        "- Инструмент для квантового скачка в ключевых сферах\n" +
-                        "- Чёткий план на ближайший год, 5 лет, 10 лет и дальше\n\n" +
-                        "Это твой путеводитель к осознанной и гармоничной жизни.\n\n" +
-                        "🌌 Полное описание звезды\n" +
-                        "Комплексный анализ твоей жизни, включая глубинные структуры души и кармические задачи.\n\n" +
-                        "✨ Узнай:\n" +
-                        "- Своё предназначение\n" +
-                        "- Сильные стороны и зоны роста\n" +
-                        "- Как реализовать свой потенциал\n\n" +
-                        "👶 Разбор детской матрицы\n" +
-                        "Волшебный ключ к пониманию внутреннего мира твоего ребёнка.\n\n" +
-                        "✨ Создай среду, где:\n" +
-                        "- Таланты малыша расцветают\n" +
-                        "- Сложности превращаются в сильные стороны\n\n" +
-                        "Это бесценный инструмент для осознанного родительства.\n\n" +
-                        "🏛 Родовой квадрат\n" +
-                        "Уникальный инструмент для понимания и трансформации родовых программ.\n\n" +
-                        "✨ Осознай:\n" +
-                        "- Какие программы ты несёшь в себе\n" +
-                        "- Как они влияют на твою жизнь\n\n" +
-                        "Получи свободу выбора и создай новую историю для себя и будущих поколений.\n\n" +
-                        "🔑 Код успеха\n" +
-                        "Твой личный ключ к достижению целей.\n\n" +
-                        "✨ Активируй:\n" +
-                        "- Свои сильные стороны и скрытые таланты\n" +
-                        "- Путь наименьшего сопротивления к успеху\n\n" +
-                        "Действуй в гармонии со своей истинной природой и достигай большего с меньшими усилиями.\n\n" +
-                        "💼 Реализация\n" +
-                        "Раскрой законы своего личного денежного потока.\n\n" +
-                        "✨ Узнай:\n" +
-                        "- В каких сферах деятельности ты можешь раскрыть свой потенциал\n" +
-                        "- Как достичь финансового успеха и глубокого удовлетворения от работы\n\n" +
-                        " За прогнозом на каждый день переходи в мой канал \uD83D\uDC9B  - https://t.me/Zazina_TD");
-                execute(contactMessage);
-
-                // Второе сообщение с контактом
-                SendMessage servicesMessage = new SendMessage();
-                servicesMessage.setChatId(String.valueOf(chatId));
-                servicesMessage.setText("Для подробной консультации напишите мне @ZAZINA_TATYANA");
-
-                execute(servicesMessage);
-                return; // Важно: завершаем обработку здесь
-            } catch (TelegramApiException e) {
-                e.printStackTrace();
+    private void handleMoreInfoRequest(long chatId, boolean accepted, SendMessage message) {
+        funnel.publish(chatId, accepted ? FunnelLog.TYPE_SERVICES_ACCEPTED : FunnelLog.TYPE_SERVICES_DECLINED,
+                UserState.WAITING_FOR_MORE, UserState.WAITING_FOR_MORE, arcanumOf(sessions.get(chatId)));
+        if (accepted) {
+            // Первое сообщение с описанием услуг
+            SendMessage contactMessage = new SendMessage();
+            contactMessage.setChatId(String.valueOf(chatId));
+            contactMessage.setText(replies.text(Reply.MORE_SERVICES));
+            send(contactMessage);
+
+            // Второе сообщение с контактом
+            SendMessage servicesMessage = new SendMessage();
+            servicesMessage.setChatId(String.valueOf(chatId));
+            servicesMessage.setText(replies.text(Reply.MORE_CONTACT));
+            if (config.forecastEnabled) {
+                servicesMessage.setReplyMarkup(replies.forecastKeyboard());
             }
+
+            send(servicesMessage);
+            return; // Важно: завершаем обработку здесь
         } else {
-            message.setText("Если передумаешь, пиши за разбором мне лично - https://t.me/ZAZINA_TATYANA  \uD83D\uDE4C\n" +
-                    "Хорошего дня! \uD83D\uDE0A");
+            message.setText(replies.text(Reply.MORE_DECLINED));
 
         }
     }
 
+    /**
+     * Начало заявки на прогноз на год: запрос года
+     * @param chatId ID чата
+     * @param text Не используется (нажатие кнопки)
+     * @param message Объект сообщения для ответа
+     */
+    private void handleForecastRequest(long chatId, String text, SendMessage message) {
+        int from = Year.now().getValue();
+        message.setText(replies.text(Reply.FORECAST_PROMPT, String.valueOf(from), String.valueOf(from + FORECAST_YEARS_AHEAD)));
+        setState(chatId, UserState.WAITING_FOR_FORECAST_YEAR);
+    }
+
+    /**
+     * Обработка ввода года прогноза
+     * @param chatId ID чата
+     * @param text Введенный год
+     * @param message Объект сообщения для ответа
+     */
+    private void handleForecastYearInput(long chatId, String text, SendMessage message) {
+        int from = Year.now().getValue();
+        int year = InputParser.parseYear(text, from, from + FORECAST_YEARS_AHEAD);
+        if (year != InputParser.INVALID) {
+            sessions.put(chatId, Session.withForecastYear(sessions.get(chatId), year));
+            message.setText(replies.text(Reply.FORECAST_CONFIRM, String.valueOf(year)));
+            message.setReplyMarkup(replies.confirmationKeyboard());
+            setState(chatId, UserState.CONFIRM_FORECAST);
+        } else {
+            message.setText(replies.text(Reply.FORECAST_YEAR_INVALID,
+                    String.valueOf(from), String.valueOf(from + FORECAST_YEARS_AHEAD)));
+        }
+    }
+
+    /**
+     * Подтверждение заявки на прогноз: заявка уходит администраторам
+     * @param chatId ID чата
+     * @param confirmed true если пользователь нажал "Да"
+     * @param message Объект сообщения для ответа
+     */
+    private void handleForecastConfirmation(long chatId, boolean confirmed, SendMessage message) {
+        if (!confirmed) {
+            message.setText(replies.text(Reply.FORECAST_RETRY));
+            setState(chatId, UserState.WAITING_FOR_FORECAST_YEAR);
+            return;
+        }
+        long session = sessions.get(chatId);
+        String year = String.valueOf(Session.forecastYear(session));
+        String name = sessions.getName(chatId);
+        String order = replies.text(Reply.FORECAST_ORDER, name != null ? name : replies.text(Reply.FORECAST_NO_NAME),
+                Session.formatBirthdate(session), year, String.valueOf(chatId));
+        // Заявка содержит личные данные - уходит только администраторам (список проверен при старте)
+        for (long adminChatId : config.adminChatIds) {
+            sendTextMessage(adminChatId, order);
+        }
+        message.setText(replies.text(Reply.FORECAST_ACCEPTED, year));
+        setState(chatId, UserState.WAITING_FOR_MORE);
+    }
+
     /**
      * Отправка PDF документа с арканом по дате рождения
      * @param chatId ID чата
-     * @param birthDate Дата рождения в формате ДД.ММ.ГГГГ
+     * @param session Сессия пользователя с датой рождения и полом
      */
-    private void sendArcanumDocument(long chatId, String birthDate) {
+    private void sendArcanumDocument(long chatId, long session) {
         try {
-            // Разбиваем дату на составляющие
-            String[] parts = birthDate.split("\\.");
-            int day = Integer.parseInt(parts[0]); // Извлекаем день
+            if (!Session.hasBirthdate(session)) {
+                throw new IllegalStateException("Дата рождения не сохранена для чата " + chatId);
+            }
 
-            // Вычисляем номер аркана
-            int arcanumNumber = calculateArcanumNumber(day);
-            String gender = getUserData(chatId, "gender");
+            // Вычисляем номер аркана по дате рождения
+            int arcanumNumber = arcanumOf(session);
 
             // Находим соответствующий PDF файл
-            String pdfPath = findArcanumPdf(arcanumNumber, gender);
+            ArcanumAssets.Asset pdf = arcanumAssets.find(arcanumNumber, Session.gender(session) == Gender.MALE);
 
             // Отправляем документ пользователю
-            sendPdfDocument(chatId, pdfPath, "Ваш аркан дня рождения: " + arcanumNumber);
+            sendPdfDocument(chatId, pdf, replies.text(Reply.DOCUMENT_CAPTION, String.valueOf(arcanumNumber)));
 
         } catch (Exception e) {
+            errors[ERROR_DOCUMENT].increment();
             e.printStackTrace();
-            sendTextMessage(chatId, "Произошла ошибка при обработке вашей даты.");
+            sendTextMessage(chatId, replies.text(Reply.BIRTHDATE_ERROR));
         }
     }
 
     /**
-     * Вычисление номера аркана по дню рождения
-     * @param day День рождения (1-31)
-     * @return Номер аркана (1-22)
+     * Отправка PDF документа пользователю
+     * @param chatId ID чата
+     * @param pdf Файл PDF из таблицы арканов
+     * @param caption Подпись к документу
      */
-    private int calculateArcanumNumber(int day) {
-        // Для дней 1-22 аркан соответствует числу
-        if (day <= 22) {
-            return day;
+    private void sendPdfDocument(long chatId, ArcanumAssets.Asset pdf, String caption) {
+        if (pdf == null) {
+            sendTextMessage(chatId, replies.text(Reply.DOCUMENT_MISSING));
+            return;
         }
 
-        // Для дней 23-31 суммируем цифры
-        int sum = 0;
-        int tempDay = day;
-        while (tempDay > 0) {
-            sum += tempDay % 10;
-            tempDay /= 10;
-        }
+        // Документ нельзя вернуть в ответе webhook - сначала отправляем предыдущее сообщение
+        flushWebhookReply();
 
-        // Если сумма больше 22, продолжаем суммировать цифры
-        while (sum > 22) {
-            int newSum = 0;
-            int tempSum = sum;
-            while (tempSum > 0) {
-                newSum += tempSum % 10;
-                tempSum /= 10;
-            }
-            sum = newSum;
-        }
+        // Если файл уже загружался, отправляем его по file_id без повторной загрузки
+        String fileId = documentCache.getFileId(pdf.sha256());
+        outbound.submit(chatId, () -> fileId != null
+                        ? sendCachedDocument(chatId, pdf, fileId, caption)
+                        : uploadDocument(chatId, pdf, caption))
+                .exceptionally(error -> {
+                    errors[ERROR_DOCUMENT].increment();
+                    error.printStackTrace();
+                    sendTextMessage(chatId, replies.text(Reply.DOCUMENT_ERROR));
+                    return null;
+                });
+    }
 
-        return sum;
+    /**
+     * Отправка документа по сохраненному file_id
+     * @param chatId ID чата
+     * @param pdf Файл PDF из таблицы арканов
+     * @param fileId Сохраненный file_id
+     * @param caption Подпись к документу
+     * @return Отправленное сообщение
+     */
+    private CompletableFuture<Message> sendCachedDocument(long chatId, ArcanumAssets.Asset pdf,
+                                                          String fileId, String caption) {
+        documentSends[DOCUMENT_FROM_CACHE].increment();
+        return timed(apiLatency[API_SEND_DOCUMENT],
+                () -> executeAsync(createSendDocument(chatId, new InputFile(fileId), caption)))
+                .exceptionallyCompose(error -> {
+                    // Telegram не принял сохраненный file_id - забываем его и загружаем файл заново
+                    if (isBadRequest(error)) {
+                        forgetFileId(pdf);
+                        return uploadDocument(chatId, pdf, caption);
+                    }
+                    return CompletableFuture.failedFuture(error);
+                });
     }
 
     /**
-     * Поиск PDF файла аркана с учетом пола
-     * @param arcanumNumber Номер аркана (1-22)
-     * @param gender Пол пользователя
-     * @return Путь к файлу PDF
+     * Загрузка документа с запоминанием file_id, который вернул Telegram
+     * @param chatId ID чата
+     * @param pdf Файл PDF из таблицы арканов
+     * @param caption Подпись к документу
+     * @return Отправленное сообщение
      */
-    private String findArcanumPdf(int arcanumNumber, String gender) {
-        // Пробуем найти гендерно-специфичный файл (m_arcanum_X.pdf или f_arcanum_X.pdf)
-        String genderPrefix = gender.equals("gender_male") ? "m_" : "f_";
-        String pdfPath = PDF_BASE_PATH + genderPrefix + "arcanum_" + arcanumNumber + ".pdf";
+    private CompletableFuture<Message> uploadDocument(long chatId, ArcanumAssets.Asset pdf, String caption) {
+        documentSends[DOCUMENT_UPLOADED].increment();
+        uploadSize.observe(pdf.size());
+        return timed(apiLatency[API_SEND_DOCUMENT],
+                () -> executeAsync(createSendDocument(chatId, new InputFile(pdf.file()), caption)))
+                .thenApply(sent -> {
+                    if (sent != null && sent.getDocument() != null) {
+                        rememberFileId(pdf, sent.getDocument().getFileId());
+                    }
+                    return sent;
+                });
+    }
 
-        if (new File(pdfPath).exists()) {
-            return pdfPath;
-        }
+    /**
+     * @param error Ошибка запроса
+     * @return true если Telegram ответил 400 Bad Request
+     */
+    private static boolean isBadRequest(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TelegramApiRequestException requestError
+                && Integer.valueOf(400).equals(requestError.getErrorCode());
+    }
 
-        // Если гендерного файла нет, пробуем универсальный (arcanum_X.pdf)
-        pdfPath = PDF_BASE_PATH + "arcanum_" + arcanumNumber + ".pdf";
-        if (new File(pdfPath).exists()) {
-            return pdfPath;
+    private void rememberFileId(ArcanumAssets.Asset pdf, String fileId) {
+        try {
+            documentCache.put(pdf.sha256(), fileId);
+        } catch (IOException e) {
+            errors[ERROR_STORAGE].increment();
+            e.printStackTrace();
         }
+    }
 
-        // Если файл аркана не найден, возвращаем файл по умолчанию
-        return PDF_BASE_PATH + "default.pdf";
+    private void forgetFileId(ArcanumAssets.Asset pdf) {
+        try {
+            documentCache.invalidate(pdf.sha256());
+        } catch (IOException e) {
+            errors[ERROR_STORAGE].increment();
+            e.printStackTrace();
+        }
     }
 
     /**
-     * Отправка PDF документа пользователю
+     * Создание запроса на отправку документа
      * @param chatId ID чата
-     * @param filePath Путь к файлу PDF
+     * @param document Загружаемый файл или file_id
      * @param caption Подпись к документу
+     * @return Настроенный объект SendDocument
      */
-    private void sendPdfDocument(long chatId, String filePath, String caption) {
-        try {
-            File pdfFile = new File(filePath);
-            if (!pdfFile.exists()) {
-                sendTextMessage(chatId, "Извините, файл с описанием аркана не найден.");
-                return;
-            }
-
-            // Создаем и настраиваем объект для отправки документа
-            SendDocument sendDocument = new SendDocument();
-            sendDocument.setChatId(String.valueOf(chatId));
-            sendDocument.setDocument(new InputFile(pdfFile));
-            sendDocument.setCaption(caption);
-
-            // Отправляем документ
-            execute(sendDocument);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
-            sendTextMessage(chatId, "Ошибка при отправке файла.");
-        }
+    private SendDocument createSendDocument(long chatId, InputFile document, String caption) {
+        SendDocument sendDocument = new SendDocument();
+        sendDocument.setChatId(String.valueOf(chatId));
+        sendDocument.setDocument(document);
+        sendDocument.setCaption(caption);
+        return sendDocument;
     }
 
     /**
@@ -431,88 +863,182 @@ public class Tutorial extends TelegramLongPollingBot {
         SendMessage message = new SendMessage();
         message.setChatId(String.valueOf(chatId));
         message.setText(text);
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
+        send(message);
+    }
+
+    /**
+     * Отправка сообщения: при обработке webhook-обновления сообщение может быть
+     * отложено, чтобы вернуть его в HTTP-ответе
+     * @param message Сообщение
+     */
+    private void send(SendMessage message) {
+        WebhookReply reply = webhookReply.get();
+        SendMessage now = reply != null ? reply.offer(message) : message;
+        if (now != null) {
+            enqueue(now);
+        }
+    }
+
+    /**
+     * Отправка отложенного для webhook-ответа сообщения через Bot API
+     */
+    private void flushWebhookReply() {
+        WebhookReply reply = webhookReply.get();
+        SendMessage held = reply != null ? reply.takePending() : null;
+        if (held != null) {
+            enqueue(held);
         }
     }
 
     /**
-     * Сохранение данных пользователя
+     * Постановка сообщения в очередь отправки через Bot API
+     * @param message Сообщение
+     */
+    private void enqueue(SendMessage message) {
+        outbound.submit(Long.parseLong(message.getChatId()),
+                        () -> timed(apiLatency[API_SEND_MESSAGE], () -> executeAsync(message)))
+                .exceptionally(error -> {
+                    errors[ERROR_SEND].increment();
+                    error.printStackTrace();
+                    return null;
+                });
+    }
+
+    /**
+     * Получение текущего состояния диалога
      * @param chatId ID чата
-     * @param key Ключ данных (name, gender, birthdate)
-     * @param value Значение
+     * @return Состояние (START для новых пользователей)
      */
-    private void storeUserData(long chatId, String key, String value) {
-        userData.computeIfAbsent(chatId, k -> new HashMap<>()).put(key, value);
+    private UserState getState(long chatId) {
+        return Session.state(sessions.get(chatId));
     }
 
     /**
-     * Получение сохраненных данных пользователя
+     * Сохранение состояния диалога
      * @param chatId ID чата
-     * @param key Ключ данных
-     * @return Значение или null если не найдено
+     * @param state Новое состояние
      */
-    private String getUserData(long chatId, String key) {
-        return userData.getOrDefault(chatId, Collections.emptyMap()).get(key);
+    private void setState(long chatId, UserState state) {
+        long session = sessions.get(chatId);
+        sessions.put(chatId, Session.withState(session, state));
+        transitions[state.ordinal()].increment();
+        funnel.publish(chatId, FunnelLog.TYPE_TRANSITION, Session.state(session), state, arcanumOf(session));
     }
 
     /**
-     * Создание клавиатуры для выбора пола
-     * @return Объект InlineKeyboardMarkup с кнопками "Мужчина" и "Девушка"
+     * Аркан дня рождения - одно чтение из заранее рассчитанной матрицы
+     * @param session Сессия пользователя
+     * @return Номер аркана или 0, если дата рождения еще не введена
      */
-    private InlineKeyboardMarkup createGenderKeyboard() {
-        InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+    private int arcanumOf(long session) {
+        if (!Session.hasBirthdate(session)) {
+            return 0;
+        }
+        int date = InputParser.pack(Session.day(session), Session.month(session), Session.year(session));
+        return destinyMatrix.get(date, DestinyMatrix.DAY);
+    }
 
-        // Кнопка "Мужчина"
-        InlineKeyboardButton maleButton = new InlineKeyboardButton();
-        maleButton.setText("Мужчина");
-        maleButton.setCallbackData("gender_male");
+    /**
+     * Запуск запроса к Bot API с замером времени до ответа
+     * @param latency Гистограмма для времени запроса
+     * @param call Запуск запроса
+     * @return Результат запроса
+     */
+    private static <T> CompletableFuture<T> timed(Metrics.Histogram latency, OutboundQueue.Call<T> call) {
+        long started = System.nanoTime();
+        CompletableFuture<T> request;
+        try {
+            request = call.start();
+        } catch (TelegramApiException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        return request.whenComplete((result, error) -> latency.observeSince(started));
+    }
 
-        // Кнопка "Девушка"
-        InlineKeyboardButton femaleButton = new InlineKeyboardButton();
-        femaleButton.setText("Девушка");
-        femaleButton.setCallbackData("gender_female");
+    @Override
+    protected <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> sendApiMethodAsync(Method method) {
+        return transport != null ? transport.call(method) : super.sendApiMethodAsync(method);
+    }
 
-        // Добавляем кнопки в один ряд
-        keyboard.add(Arrays.asList(maleButton, femaleButton));
-        keyboardMarkup.setKeyboard(keyboard);
-        return keyboardMarkup;
+    @Override
+    public CompletableFuture<Message> executeAsync(SendDocument sendDocument) {
+        // Миниатюры, разметка подписи и файлы из потока - редкие случаи, их отправляет библиотека
+        return transport != null && BotTransport.supports(sendDocument)
+                ? transport.sendDocument(sendDocument) : super.executeAsync(sendDocument);
     }
 
     /**
-     * Создание клавиатуры с кнопками подтверждения
-     * @return Объект InlineKeyboardMarkup с кнопками "Да" и "Нет"
+     * @return Метрики бота
      */
-    private InlineKeyboardMarkup createConfirmationKeyboard() {
-        InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
-        List<List<InlineKeyboardButton>> keyboard = new ArrayList<>();
+    Metrics metrics() {
+        return metrics;
+    }
 
-        // Кнопка "Да"
-        InlineKeyboardButton yesButton = new InlineKeyboardButton();
-        yesButton.setText("Да");
-        yesButton.setCallbackData("confirm_yes");
+    /**
+     * Получение выбранного пола
+     * @param chatId ID чата
+     * @return Пол или null, если он еще не выбран
+     */
+    private Gender getGender(long chatId) {
+        return Session.gender(sessions.get(chatId));
+    }
 
-        // Кнопка "Нет"
-        InlineKeyboardButton noButton = new InlineKeyboardButton();
-        noButton.setText("Нет");
-        noButton.setCallbackData("confirm_no");
+    /**
+     * Фоновое удаление сессий, к которым не обращались дольше TTL,
+     * и состояния фильтра обновлений для неактивных чатов
+     */
+    private void sweepSessions() {
+        try {
+            while (true) {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                sessions.evictExpired();
+                updateFilter.sweep();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onClosing() {
+        dispatcher.close();
+        outbound.close();
+        flushToDisk();
+        super.onClosing();
+    }
 
-        // Добавляем кнопки в один ряд
-        keyboard.add(Arrays.asList(yesButton, noButton));
-        keyboardMarkup.setKeyboard(keyboard);
-        return keyboardMarkup;
+    /**
+     * Запись накопленных изменений сессий и событий воронки перед остановкой
+     */
+    private void flushToDisk() {
+        // Контрольная точка рассылки - до закрытия журнала сессий
+        broadcaster.close();
+        try {
+            if (sessionJournal != null) {
+                sessionJournal.close();
+            }
+        } catch (IOException e) {
+            errors[ERROR_STORAGE].increment();
+            e.printStackTrace();
+        }
+        funnel.close();
     }
 
     /**
-     * Проверка валидности имени
-     * @param name Проверяемое имя
-     * @return true если имя валидно (только буквы, 2-50 символов)
+     * Настройки клиента Bot API
+     * @param config Настройки бота
+     * @return Настройки для конструктора бота
      */
-    private boolean isValidName(String name) {
-        return name.matches("[A-Za-zА-Яа-яёЁ]+") && name.length() >= 2 && name.length() <= 50;
+    private static DefaultBotOptions createOptions(BotConfig config) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        // executeAsync выполняется в пуле потоков библиотеки, по умолчанию в нем один поток
+        options.setMaxThreads(config.outboundThreads);
+        // Другой адрес Bot API (локальный сервер Bot API или заглушка для нагрузочного теста),
+        // к нему сразу дописывается токен: например http://localhost:8081/bot
+        if (config.botApiUrl != null) {
+            options.setBaseUrl(config.botApiUrl);
+        }
+        return options;
     }
 
     @Override
@@ -522,28 +1048,67 @@ public class Tutorial extends TelegramLongPollingBot {
 
     @Override
     public String getBotToken() {
-        // Пробуем получить токен из переменных окружения (для продакшена)
-        String token = System.getenv("TELEGRAM_BOT_TOKEN");
-
-        // Если не найден, читаем из .env (для разработки)
-        if (token == null) {
-            Dotenv dotenv = Dotenv.load();
-            token = dotenv.get("TELEGRAM_BOT_TOKEN");
-        }
-
-        if (token == null || token.isEmpty()) {
-            throw new IllegalStateException("Токен бота не найден! Проверьте переменную TELEGRAM_BOT_TOKEN");
-        }
-        return token;
+        // Библиотека запрашивает токен при каждом запросе - отдаем прочитанный при старте
+        return config.token;
     }
 
     public static void main(String[] args) {
         try {
-            // Регистрация и запуск бота
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            botsApi.registerBot(new Tutorial());
-        } catch (TelegramApiException e) {
+            StartupTimer startup = new StartupTimer();
+            BotConfig config = BotConfig.load();
+            startup.phase("настройки");
+
+            // Входная точка кластера только распределяет обновления по экземплярам бота
+            if (config.mode == BotConfig.Mode.INGRESS) {
+                ClusterIngress.start(config);
+                startup.finish();
+                return;
+            }
+
+            Tutorial bot = new Tutorial(config, startup);
+            // При остановке контейнера дописываем журнал сессий и события воронки
+            Runtime.getRuntime().addShutdownHook(new Thread(bot::flushToDisk));
+
+            // Все метрики регистрируются до запуска сервера метрик; время запуска появится после его окончания
+            bot.metrics().register("bot_startup_duration_milliseconds",
+                    "Время запуска с момента старта JVM (0 - запуск еще идет)", "gauge", startup::finishedMillis);
+
+            // Метрики для Prometheus на http://<хост>:METRICS_PORT/metrics
+            if (config.metricsPort >= 0) {
+                MetricsServer metricsServer = new MetricsServer(config.metricsPort, bot.metrics());
+                metricsServer.start();
+                System.out.println("Метрики доступны на порту " + metricsServer.port() + ", путь /metrics");
+            }
+
+            // Режим получения обновлений: polling (по умолчанию) или webhook (в том числе узел кластера)
+            if (config.mode == BotConfig.Mode.WEBHOOK) {
+                startWebhook(bot, config);
+            } else {
+                // Регистрация и запуск бота
+                TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+                botsApi.registerBot(bot);
+            }
+            startup.phase("прием обновлений");
+            startup.finish();
+        } catch (TelegramApiException | IOException | IllegalStateException e) {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Запуск приема обновлений через webhook
+     * @param bot Экземпляр бота
+     * @param config Настройки бота
+     */
+    private static void startWebhook(Tutorial bot, BotConfig config) throws IOException, TelegramApiException {
+        WebhookServer server = new WebhookServer(config.webhookPort, config.webhookPath, config.webhookSecret,
+                config.webhookReplyTimeoutMs, bot::onWebhookUpdate);
+        server.start();
+
+        // Без публичного адреса сервер только слушает порт (например, для локальной заглушки с записанными обновлениями)
+        if (config.webhookUrl != null) {
+            bot.execute(new WebhookServer.SecretSetWebhook(config.webhookUrl, config.webhookSecret));
+        }
+        System.out.println("Webhook слушает порт " + server.port() + ", путь " + config.webhookPath);
+    }
+}
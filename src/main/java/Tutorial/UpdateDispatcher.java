@@ -0,0 +1,97 @@
+package Tutorial;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Параллельная обработка обновлений на виртуальных потоках.
+ * Обновления одного чата выполняются строго по очереди в порядке поступления,
+ * обновления разных чатов - независимо друг от друга.
+ * У каждого активного чата своя очередь; очередь живет, пока в ней есть работа,
+ * и удаляется, как только обработчик ее опустошил.
+ */
+final class UpdateDispatcher implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Очереди задач активных чатов (ключ - chatId)
+    private final ConcurrentHashMap<Long, Queue<Runnable>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Постановка обработки обновления в очередь его чата
+     * @param chatId ID чата (см. {@link #chatIdOf(Update)})
+     * @param task Обработка обновления
+     */
+    void dispatch(long chatId, Runnable task) {
+        boolean[] created = new boolean[1];
+
+        // Добавление выполняется под блокировкой ячейки карты, поэтому не может
+        // потеряться между проверкой очереди обработчиком и ее удалением
+        Queue<Runnable> queue = queues.compute(chatId, (key, current) -> {
+            if (current == null) {
+                current = new ConcurrentLinkedQueue<>();
+                created[0] = true;
+            }
+            current.add(task);
+            return current;
+        });
+
+        // Новая очередь - запускаем для нее обработчик
+        if (created[0]) {
+            executor.execute(() -> drain(chatId, queue));
+        }
+    }
+
+    /**
+     * Последовательная обработка всех обновлений одного чата
+     * @param chatId ID чата
+     * @param queue Очередь задач чата
+     */
+    private void drain(long chatId, Queue<Runnable> queue) {
+        while (true) {
+            Runnable task = queue.poll();
+            if (task == null) {
+                // Удаляем очередь только если в нее ничего не успели добавить
+                Queue<Runnable> remaining = queues.compute(chatId,
+                        (key, current) -> current == null || current.isEmpty() ? null : current);
+                if (remaining == null) {
+                    return;
+                }
+                continue;
+            }
+
+            // Любая ошибка задачи (в том числе Error) не должна прерывать обход: иначе очередь
+            // останется в карте и обновления чата больше никто не обработает
+            try {
+                task.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Определение чата, к которому относится обновление
+     * @param update Входящее обновление
+     * @return ID чата или 0, если обновление не привязано к чату
+     */
+    static long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return 0L;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
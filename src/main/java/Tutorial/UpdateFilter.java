@@ -0,0 +1,138 @@
+package Tutorial;
+
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фильтр входящих обновлений до постановки в очередь обработки.
+ * Ограничивает скорость обновлений от одного чата (token bucket без блокировок:
+ * состояние чата - одно число, меняется через CAS) и отбрасывает повторные
+ * нажатия той же кнопки того же сообщения, пока первое нажатие еще не обработано.
+ */
+final class UpdateFilter {
+
+    /**
+     * Решение по обновлению
+     */
+    enum Verdict {
+        ACCEPT,
+        // Чат превысил допустимую скорость
+        RATE_LIMITED,
+        // Такое же нажатие кнопки еще обрабатывается
+        DUPLICATE
+    }
+
+    /**
+     * Нажатие кнопки: чат, сообщение с клавиатурой и данные кнопки
+     */
+    private record CallbackKey(long chatId, Integer messageId, String data) {
+    }
+
+    // Интервал между обновлениями при постоянной скорости и допустимое опережение (всплеск)
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    // Теоретическое время прибытия следующего обновления чата (алгоритм GCRA)
+    private final ConcurrentHashMap<Long, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    // Нажатия, принятые, но еще не обработанные
+    private final Set<CallbackKey> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param rate Обновлений в секунду от одного чата
+     * @param burst Сколько обновлений подряд можно прислать без паузы
+     */
+    UpdateFilter(double rate, double burst) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.toleranceNanos = (long) (intervalNanos * Math.max(0, burst - 1));
+    }
+
+    /**
+     * Решение по входящему обновлению. Принятое нажатие кнопки считается
+     * обрабатываемым до вызова {@link #done(Update)}.
+     * @param update Входящее обновление
+     * @return Вердикт
+     */
+    Verdict admit(Update update) {
+        long chatId = UpdateDispatcher.chatIdOf(update);
+        if (chatId == 0) {
+            return Verdict.ACCEPT;
+        }
+        CallbackKey key = keyOf(update);
+        if (key != null && inFlight.contains(key)) {
+            return Verdict.DUPLICATE;
+        }
+        if (!tryAcquire(chatId, System.nanoTime())) {
+            return Verdict.RATE_LIMITED;
+        }
+        // Два одинаковых нажатия могли пройти проверку одновременно - принимаем только одно
+        if (key != null && !inFlight.add(key)) {
+            return Verdict.DUPLICATE;
+        }
+        return Verdict.ACCEPT;
+    }
+
+    /**
+     * Завершение обработки принятого обновления
+     * @param update Обновление, для которого {@link #admit(Update)} вернул ACCEPT
+     */
+    void done(Update update) {
+        CallbackKey key = keyOf(update);
+        if (key != null) {
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * Удаление состояния чатов, которые давно ничего не присылали
+     * (их token bucket все равно полон)
+     */
+    void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(tat -> tat.get() - now < 0);
+    }
+
+    /**
+     * @return Количество чатов с состоянием в фильтре
+     */
+    int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Попытка взять токен чата: обновление разрешено, если теоретическое время
+     * прибытия опережает текущее не больше чем на допустимый всплеск
+     */
+    private boolean tryAcquire(long chatId, long now) {
+        AtomicLong tat = buckets.get(chatId);
+        if (tat == null) {
+            tat = buckets.computeIfAbsent(chatId, id -> new AtomicLong(now));
+        }
+        while (true) {
+            long current = tat.get();
+            long base = current - now > 0 ? current : now;
+            if (base - now > toleranceNanos) {
+                return false;
+            }
+            if (tat.compareAndSet(current, base + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private static CallbackKey keyOf(Update update) {
+        if (!update.hasCallbackQuery()) {
+            return null;
+        }
+        CallbackQuery query = update.getCallbackQuery();
+        if (query.getMessage() == null || query.getData() == null) {
+            return null;
+        }
+        return new CallbackKey(query.getMessage().getChatId(), query.getMessage().getMessageId(), query.getData());
+    }
+}
@@ -0,0 +1,28 @@
+package Tutorial;
+
+/**
+ * Перечисление состояний диалога с пользователем.
+ * Порядковый номер хранится в упакованной сессии (см. {@link Session}),
+ * поэтому новые состояния добавляются только в конец.
+ */
+enum UserState {
+    START,                  // Начальное состояние при команде /start
+    WAITING_FOR_GENDER,      // Ожидание выбора пола
+    WAITING_FOR_NAME,        // Ожидание ввода имени
+    CONFIRM_NAME,            // Подтверждение имени
+    WAITING_FOR_BIRTHDATE,   // Ожидание ввода даты рождения
+    CONFIRM_BIRTHDATE,       // Подтверждение даты рождения
+    WAITING_FOR_MORE,        // Предложение дополнительной информации
+    WAITING_FOR_FORECAST_YEAR, // Заявка на прогноз: ожидание года
+    CONFIRM_FORECAST;        // Заявка на прогноз: подтверждение
+
+    private static final UserState[] VALUES = values();
+
+    /**
+     * @param ordinal Порядковый номер состояния
+     * @return Состояние (START для неизвестного номера)
+     */
+    static UserState of(int ordinal) {
+        return ordinal < VALUES.length ? VALUES[ordinal] : START;
+    }
+}
@@ -0,0 +1,112 @@
+package Tutorial;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Ответ на обновление, пришедшее через webhook.
+ * Последнее сообщение, сформированное при обработке, можно вернуть прямо в теле
+ * HTTP-ответа, сэкономив отдельный запрос к Bot API. Все предыдущие сообщения
+ * отправляются обычным способом, до него, поэтому порядок сообщений сохраняется.
+ */
+final class WebhookReply {
+
+    // Отправка сообщения через Bot API, если вернуть его в HTTP-ответе уже нельзя
+    private final Consumer<SendMessage> fallback;
+
+    private final CompletableFuture<SendMessage> result = new CompletableFuture<>();
+
+    // Сообщение, которое пока удерживается для HTTP-ответа
+    private SendMessage pending;
+
+    // HTTP-ответ уже отдан (обработка завершилась или не уложилась во время ожидания)
+    private boolean closed;
+
+    /**
+     * @param fallback Отправка сообщения через Bot API
+     */
+    WebhookReply(Consumer<SendMessage> fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Предложение очередного исходящего сообщения
+     * @param message Новое сообщение
+     * @return Сообщение, которое нужно отправить через Bot API прямо сейчас, или null
+     */
+    synchronized SendMessage offer(SendMessage message) {
+        if (closed) {
+            return message;
+        }
+        SendMessage previous = pending;
+        pending = message;
+        return previous;
+    }
+
+    /**
+     * Освобождение удерживаемого сообщения перед отправкой, которую нельзя вернуть
+     * в HTTP-ответе (например, загрузка документа)
+     * @return Сообщение для немедленной отправки через Bot API или null
+     */
+    synchronized SendMessage takePending() {
+        SendMessage previous = pending;
+        pending = null;
+        return previous;
+    }
+
+    /**
+     * Завершение обработки обновления: удерживаемое сообщение уходит в HTTP-ответ
+     * @param inlineAllowed false если предыдущие сообщения чата еще не отправлены -
+     *                      тогда удерживаемое сообщение встает в очередь за ними
+     */
+    void finish(boolean inlineAllowed) {
+        SendMessage message;
+        synchronized (this) {
+            closed = true;
+            message = pending;
+            pending = null;
+        }
+        if (message != null && !inlineAllowed) {
+            fallback.accept(message);
+            message = null;
+        }
+        result.complete(message);
+    }
+
+    /**
+     * Ожидание ответа для тела HTTP-ответа
+     * @param timeoutMs Сколько ждать окончания обработки
+     * @return Сообщение для HTTP-ответа или null
+     */
+    SendMessage await(long timeoutMs) throws InterruptedException {
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abandon();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Обработка не уложилась во время ожидания: HTTP-ответ уходит пустым,
+     * а удерживаемое и все последующие сообщения отправляются через Bot API
+     */
+    private void abandon() {
+        SendMessage message;
+        synchronized (this) {
+            closed = true;
+            message = pending;
+            pending = null;
+        }
+        if (message != null) {
+            fallback.accept(message);
+        }
+    }
+}
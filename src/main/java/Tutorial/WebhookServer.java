@@ -0,0 +1,147 @@
+package Tutorial;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Прием обновлений через webhook на встроенном HTTP-сервере JDK.
+ * Проверяет секретный токен из заголовка Telegram, разбирает обновление,
+ * передает его тем же обработчикам, что и long polling, и, если обработка
+ * успела сформировать ответное сообщение, возвращает его прямо в HTTP-ответе.
+ */
+final class WebhookServer implements AutoCloseable {
+
+    // Заголовок, в котором Telegram передает секрет, указанный при setWebhook
+    static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final byte[] secret;
+    private final Function<Update, WebhookReply> handler;
+    private final long replyTimeoutMs;
+
+    /**
+     * @param port Порт HTTP-сервера
+     * @param path Путь, на который Telegram присылает обновления
+     * @param secret Секретный токен (обязателен: без него endpoint принимал бы обновления от кого угодно)
+     * @param replyTimeoutMs Сколько ждать ответ для тела HTTP-ответа
+     * @param handler Обработчик обновления
+     */
+    WebhookServer(int port, String path, String secret, long replyTimeoutMs,
+                  Function<Update, WebhookReply> handler) throws IOException {
+        if (secret.isBlank()) {
+            throw new IllegalArgumentException("Секретный токен webhook не задан");
+        }
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.replyTimeoutMs = replyTimeoutMs;
+        this.handler = handler;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext(path, this::handle);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    void start() {
+        server.start();
+    }
+
+    /**
+     * @return Фактический порт сервера (полезно при запуске на порту 0)
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+    }
+
+    /**
+     * Обработка одного HTTP-запроса от Telegram
+     * @param exchange HTTP-запрос и ответ
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!isAuthorized(secret, exchange.getRequestHeaders().getFirst(SECRET_HEADER))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                update = MAPPER.readValue(body, Update.class);
+            } catch (IOException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            SendMessage reply = handler.apply(update).await(replyTimeoutMs);
+            if (reply == null) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            // Ответ в теле webhook-ответа: Telegram выполнит метод из поля "method"
+            byte[] json = MAPPER.writeValueAsBytes(reply);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Проверка секретного токена без утечки времени сравнения
+     * @param expected Ожидаемый токен (пустой не совпадает ни с чем)
+     * @param header Значение заголовка из запроса
+     * @return true если токен совпадает
+     */
+    static boolean isAuthorized(byte[] expected, String header) {
+        return expected.length > 0 && header != null
+                && MessageDigest.isEqual(expected, header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * setWebhook с параметром secret_token, которого нет в SetWebhook этой версии библиотеки
+     */
+    static final class SecretSetWebhook extends SetWebhook {
+
+        @JsonProperty("secret_token")
+        private final String secretToken;
+
+        /**
+         * @param url Публичный адрес webhook
+         * @param secretToken Секрет, который Telegram будет передавать в заголовке
+         */
+        SecretSetWebhook(String url, String secretToken) {
+            super(url);
+            this.secretToken = secretToken;
+        }
+
+        public String getSecretToken() {
+            return secretToken;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package Tutorial;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BotConfigTest {
+
+    private static Map<String, String> env(String... pairs) {
+        Map<String, String> env = new HashMap<>();
+        env.put("TELEGRAM_BOT_TOKEN", "test");
+        for (int i = 0; i < pairs.length; i += 2) {
+            env.put(pairs[i], pairs[i + 1]);
+        }
+        return env;
+    }
+
+    @Test
+    void webhookRequiresSecret() {
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> BotConfig.load(env("BOT_MODE", "webhook")));
+        assertTrue(error.getMessage().contains("WEBHOOK_SECRET"));
+    }
+
+    @Test
+    void ingressRequiresSecret() {
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> BotConfig.load(env("BOT_MODE", "ingress", "CLUSTER_NODES", "http://bot-1:8080/webhook")));
+        assertTrue(error.getMessage().contains("WEBHOOK_SECRET"));
+    }
+
+    @Test
+    void webhookRejectsSecretTelegramDoesNotAccept() {
+        assertThrows(IllegalStateException.class,
+                () -> BotConfig.load(env("BOT_MODE", "webhook", "WEBHOOK_SECRET", "пароль с пробелом")));
+    }
+
+    @Test
+    void webhookWithSecret() throws Exception {
+        BotConfig config = BotConfig.load(env("BOT_MODE", "webhook", "WEBHOOK_SECRET", "abc_DEF-1"));
+        assertEquals(BotConfig.Mode.WEBHOOK, config.mode);
+        assertEquals("abc_DEF-1", config.webhookSecret);
+    }
+
+    @Test
+    void pollingDoesNotNeedSecret() throws Exception {
+        assertEquals(BotConfig.Mode.POLLING, BotConfig.load(env()).mode);
+    }
+
+    @Test
+    void sharedSessionStoreRequiresSecret() {
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> BotConfig.load(env("SESSION_STORE", "store:7070")));
+        assertTrue(error.getMessage().contains("WEBHOOK_SECRET"));
+    }
+
+    @Test
+    void sessionStoreListensOnLoopbackByDefault() throws Exception {
+        assertEquals("127.0.0.1", BotConfig.load(env()).sessionStoreBind);
+    }
+
+    @Test
+    void clusterWorkerOnlyInWebhookMode() {
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> BotConfig.load(env("CLUSTER_WORKER", "true")));
+        assertTrue(error.getMessage().contains("CLUSTER_WORKER"));
+    }
+
+    @Test
+    void libraryHttpClientByDefault() throws Exception {
+        assertFalse(BotConfig.load(env()).httpTransport);
+        assertTrue(BotConfig.load(env("BOT_HTTP_TRANSPORT", "jdk")).httpTransport);
+    }
+
+    @Test
+    void forecastRequiresAdminChats() {
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> BotConfig.load(env("FORECAST_ENABLED", "true")));
+        assertTrue(error.getMessage().contains("ADMIN_CHAT_IDS"));
+    }
+}
@@ -0,0 +1,126 @@
+package Tutorial;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Таблица матриц судьбы против расчета "на лету" для каждой даты диапазона
+ * MATRIX_MIN_YEAR..MATRIX_MAX_YEAR по умолчанию
+ */
+class DestinyMatrixTest {
+
+    private static final DestinyMatrix MATRIX = new DestinyMatrix(InputParser.MIN_YEAR, InputParser.MAX_YEAR);
+
+    @Test
+    void tableMatchesComputationForEveryDate() {
+        LocalDate end = LocalDate.of(InputParser.MAX_YEAR, 12, 31);
+        byte[] expected = new byte[DestinyMatrix.POSITIONS];
+        int dates = 0;
+        for (LocalDate day = LocalDate.of(InputParser.MIN_YEAR, 1, 1); !day.isAfter(end); day = day.plusDays(1)) {
+            int date = InputParser.pack(day.getDayOfMonth(), day.getMonthValue(), day.getYear());
+            DestinyMatrix.compute(day.getDayOfMonth(), day.getMonthValue(), day.getYear(), expected);
+            for (int position = 0; position < DestinyMatrix.POSITIONS; position++) {
+                int arcanum = MATRIX.get(date, position);
+                if (arcanum != expected[position]) {
+                    fail(day + ", позиция " + position + ": в таблице " + arcanum + ", расчет " + expected[position]);
+                }
+            }
+            assertArrayEquals(expected, MATRIX.row(date), day.toString());
+            dates++;
+        }
+        // 201 год, из них 49 високосных
+        assertEquals(201 * 365 + 49, dates);
+    }
+
+    @Test
+    void computationMatchesReferenceArithmetic() {
+        LocalDate end = LocalDate.of(InputParser.MAX_YEAR, 12, 31);
+        byte[] row = new byte[DestinyMatrix.POSITIONS];
+        for (LocalDate day = LocalDate.of(InputParser.MIN_YEAR, 1, 1); !day.isAfter(end); day = day.plusDays(1)) {
+            DestinyMatrix.compute(day.getDayOfMonth(), day.getMonthValue(), day.getYear(), row);
+            assertArrayEquals(reference(day.getDayOfMonth(), day.getMonthValue(), day.getYear()), row, day.toString());
+            for (byte arcanum : row) {
+                assertTrue(arcanum >= 1 && arcanum <= 22, day + ": аркан " + arcanum);
+            }
+        }
+    }
+
+    @Test
+    void dayPositionMatchesOriginalFormula() {
+        LocalDate end = LocalDate.of(InputParser.MAX_YEAR, 12, 31);
+        for (LocalDate day = LocalDate.of(InputParser.MIN_YEAR, 1, 1); !day.isAfter(end); day = day.plusDays(1)) {
+            int date = InputParser.pack(day.getDayOfMonth(), day.getMonthValue(), day.getYear());
+            assertEquals(originalArcanum(day.getDayOfMonth()), MATRIX.get(date, DestinyMatrix.DAY), day.toString());
+        }
+    }
+
+    @Test
+    void datesOutsideTableAreComputed() {
+        DestinyMatrix small = new DestinyMatrix(1990, 1991);
+        byte[] expected = new byte[DestinyMatrix.POSITIONS];
+        for (int year : new int[]{1900, 1989, 1992, 2100}) {
+            // 29 февраля для високосных лет, иначе 28-е
+            int day = year % 4 == 0 && year != 1900 && year != 2100 ? 29 : 28;
+            int date = InputParser.pack(day, 2, year);
+            DestinyMatrix.compute(day, 2, year, expected);
+            assertArrayEquals(expected, small.row(date), String.valueOf(year));
+            assertEquals(expected[DestinyMatrix.PURPOSE], small.get(date, DestinyMatrix.PURPOSE));
+        }
+    }
+
+    /**
+     * Расчет матрицы по определению, через цифры числа в строке - независимо от {@link DestinyMatrix}
+     */
+    private static byte[] reference(int day, int month, int year) {
+        int a = arcanum(day);
+        int b = arcanum(month);
+        int c = arcanum(digits(year));
+        int d = arcanum(a + b + c);
+        int e = arcanum(a + b + c + d);
+        int tail = arcanum(d + e);
+        int sky = arcanum(b + d);
+        int earth = arcanum(a + c);
+        int[] values = {a, b, c, d, e, arcanum(a + b), arcanum(b + c), arcanum(c + d), arcanum(d + a),
+                tail, arcanum(d + tail), sky, earth, arcanum(sky + earth)};
+        byte[] row = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            row[i] = (byte) values[i];
+        }
+        return row;
+    }
+
+    private static int arcanum(int n) {
+        return n > 22 ? arcanum(digits(n)) : n;
+    }
+
+    private static int digits(int n) {
+        return String.valueOf(n).chars().map(c -> c - '0').sum();
+    }
+
+    /**
+     * Формула бота до таблицы матриц: аркан только по дню рождения
+     */
+    private static int originalArcanum(int day) {
+        if (day <= 22) {
+            return day;
+        }
+        int sum = 0;
+        for (int n = day; n > 0; n /= 10) {
+            sum += n % 10;
+        }
+        while (sum > 22) {
+            int next = 0;
+            for (int n = sum; n > 0; n /= 10) {
+                next += n % 10;
+            }
+            sum = next;
+        }
+        return sum;
+    }
+}
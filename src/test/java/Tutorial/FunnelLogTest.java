@@ -0,0 +1,86 @@
+package Tutorial;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FunnelLogTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Файл дня с тремя событиями, записанный журналом
+     */
+    private Path writeDay() throws IOException {
+        FunnelLog log = new FunnelLog(directory, 16);
+        for (long chatId = 1; chatId <= 3; chatId++) {
+            log.publish(chatId, (byte) 1, UserState.START, UserState.WAITING_FOR_GENDER, 0);
+        }
+        log.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.findFirst().orElseThrow();
+        }
+    }
+
+    /**
+     * gzip-член с одним событием, как его дописывает журнал
+     */
+    private static byte[] member() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeLong(4);
+            out.writeLong(System.currentTimeMillis());
+            out.writeByte(1);
+            out.writeByte(UserState.START.ordinal());
+            out.writeByte(UserState.WAITING_FOR_GENDER.ordinal());
+            out.writeByte(0);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Long> chats(Path file) throws IOException {
+        List<Long> chats = new ArrayList<>();
+        FunnelLog.read(file, event -> chats.add(event.chatId()));
+        return chats;
+    }
+
+    @Test
+    void readsWholeFile() throws IOException {
+        Path file = writeDay();
+        Files.write(file, member(), StandardOpenOption.APPEND);
+        assertEquals(List.of(1L, 2L, 3L, 4L), chats(file));
+    }
+
+    @Test
+    void corruptTrailerKeepsEarlierEvents() throws IOException {
+        Path file = writeDay();
+        byte[] member = member();
+        // Контрольная сумма в хвосте не сходится - "Corrupt GZIP trailer"
+        member[member.length - 8] ^= 0x55;
+        Files.write(file, member, StandardOpenOption.APPEND);
+        // Событие поврежденного члена может не попасть в результат, предыдущие - на месте
+        assertEquals(List.of(1L, 2L, 3L), chats(file).subList(0, 3));
+    }
+
+    @Test
+    void truncatedMemberKeepsEarlierEvents() throws IOException {
+        Path file = writeDay();
+        byte[] member = member();
+        Files.write(file, Arrays.copyOf(member, member.length / 2), StandardOpenOption.APPEND);
+        assertEquals(List.of(1L, 2L, 3L), chats(file));
+    }
+}
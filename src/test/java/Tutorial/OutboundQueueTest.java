@@ -0,0 +1,86 @@
+package Tutorial;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiValidationException;
+
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundQueueTest {
+
+    private static TelegramApiRequestException tooManyRequests(int retryAfter) {
+        return new TelegramApiRequestException("Too Many Requests", new JSONObject(
+                "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests\","
+                        + "\"parameters\":{\"retry_after\":" + retryAfter + "}}"));
+    }
+
+    @Test
+    void retryAfterDelaysOnlyItsChat() throws Exception {
+        try (OutboundQueue queue = new OutboundQueue(1000, 1000, 1000, 10, 3)) {
+            AtomicInteger attempts = new AtomicInteger();
+            long started = System.nanoTime();
+            CompletableFuture<String> limited = queue.submit(1, () -> attempts.incrementAndGet() == 1
+                    ? CompletableFuture.failedFuture(tooManyRequests(1))
+                    : CompletableFuture.completedFuture("chat 1"));
+            // Ждем, пока первая попытка получит 429
+            while (queue.rateLimited() == 0) {
+                Thread.sleep(1);
+            }
+            CompletableFuture<String> other = queue.submit(2, () -> CompletableFuture.completedFuture("chat 2"));
+
+            assertEquals("chat 2", other.get(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(500),
+                    "запрос в другой чат ждал retry_after чужого чата");
+            assertFalse(limited.isDone());
+            assertEquals("chat 1", limited.get(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(900));
+        }
+    }
+
+    @Test
+    void connectFailureRetried() throws Exception {
+        try (OutboundQueue queue = new OutboundQueue(1000, 1000, 1000, 10, 3)) {
+            AtomicInteger attempts = new AtomicInteger();
+            CompletableFuture<String> result = queue.submit(1, () -> attempts.incrementAndGet() == 1
+                    ? CompletableFuture.failedFuture(new TelegramApiRequestException("Unable to execute sendmessage method",
+                            new ConnectException("Connection refused")))
+                    : CompletableFuture.completedFuture("ok"));
+            assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+            assertEquals(2, attempts.get());
+        }
+    }
+
+    @Test
+    void readTimeoutAndValidationNotRetried() throws Exception {
+        try (OutboundQueue queue = new OutboundQueue(1000, 1000, 1000, 10, 3)) {
+            AtomicInteger attempts = new AtomicInteger();
+            // Telegram мог уже принять запрос - повтор отправил бы сообщение дважды
+            CompletableFuture<String> timedOut = queue.submit(1, () -> {
+                attempts.incrementAndGet();
+                return CompletableFuture.failedFuture(new TelegramApiRequestException(
+                        "Unable to execute sendmessage method", new HttpTimeoutException("request timed out")));
+            });
+            assertThrows(ExecutionException.class, () -> timedOut.get(5, TimeUnit.SECONDS));
+
+            CompletableFuture<String> invalid = queue.submit(2, () -> {
+                attempts.incrementAndGet();
+                throw new TelegramApiValidationException("ChatId parameter can't be empty", new SendMessage());
+            });
+            assertThrows(ExecutionException.class, () -> invalid.get(5, TimeUnit.SECONDS));
+            assertEquals(2, attempts.get());
+            assertEquals(0, queue.retried());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package Tutorial;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedeliveryGuardTest {
+
+    @Test
+    void secondDeliveryRejected() {
+        RedeliveryGuard guard = new RedeliveryGuard();
+        assertTrue(guard.firstDelivery(1000));
+        assertTrue(guard.firstDelivery(1001));
+        assertFalse(guard.firstDelivery(1000));
+        assertFalse(guard.firstDelivery(1001));
+    }
+
+    @Test
+    void updateIdZeroAccepted() {
+        assertTrue(new RedeliveryGuard().firstDelivery(0));
+    }
+
+    @Test
+    void updateOlderThanWindowRejected() {
+        RedeliveryGuard guard = new RedeliveryGuard();
+        assertTrue(guard.firstDelivery(5 + RedeliveryGuard.WINDOW));
+        assertFalse(guard.firstDelivery(5));
+        // Следующее обновление в той же ячейке вытесняет предыдущее
+        assertTrue(guard.firstDelivery(5 + 2 * RedeliveryGuard.WINDOW));
+    }
+}
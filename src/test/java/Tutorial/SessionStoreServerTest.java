@@ -0,0 +1,74 @@
+package Tutorial;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionStoreServerTest {
+
+    private static final String SECRET = "cluster_secret-1";
+
+    private SessionStoreServer server;
+    private String address;
+
+    @BeforeEach
+    void start() throws Exception {
+        CompactSessionStore store = new CompactSessionStore(1000, TimeUnit.DAYS.toMillis(1));
+        server = new SessionStoreServer("127.0.0.1", 0, SECRET, store);
+        server.start();
+        address = "127.0.0.1:" + server.port();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        server.close();
+    }
+
+    @Test
+    void clientWithSecret() {
+        try (RemoteSessionStore sessions = new RemoteSessionStore(address, SECRET, 2000)) {
+            sessions.put(42, 7);
+            sessions.putName(42, "Анна");
+            assertEquals(7, sessions.get(42));
+            assertEquals("Анна", sessions.getName(42));
+            assertNull(sessions.getName(43));
+        }
+    }
+
+    @Test
+    void wrongSecretRejected() {
+        try (RemoteSessionStore sessions = new RemoteSessionStore(address, "wrong", 2000)) {
+            assertThrows(UncheckedIOException.class, () -> sessions.get(42));
+        }
+    }
+
+    @Test
+    void statsSurviveUnreachableServer() throws Exception {
+        try (RemoteSessionStore sessions = new RemoteSessionStore(address, SECRET, 500)) {
+            sessions.put(42, 7);
+            assertEquals(1, sessions.size());
+            assertTrue(sessions.reachable());
+
+            server.close();
+            // Статистика кэшируется на секунду - ждем, пока она устареет
+            Thread.sleep(1100);
+            assertEquals(1, sessions.size());
+            assertFalse(sessions.reachable());
+        }
+    }
+
+    @Test
+    void blankSecretRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SessionStoreServer("127.0.0.1", 0, " ", new CompactSessionStore(10, 1000)));
+    }
+}
@@ -0,0 +1,29 @@
+package Tutorial;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpdateDispatcherTest {
+
+    @Test
+    void chatKeepsWorkingAfterError() throws Exception {
+        try (UpdateDispatcher dispatcher = new UpdateDispatcher()) {
+            CountDownLatch handled = new CountDownLatch(1);
+            dispatcher.dispatch(42, () -> {
+                throw new AssertionError("ошибка обработчика");
+            });
+            dispatcher.dispatch(42, handled::countDown);
+            assertTrue(handled.await(5, TimeUnit.SECONDS));
+
+            // Очередь после ошибки удалена, следующее обновление запускает новый обход
+            CountDownLatch later = new CountDownLatch(1);
+            Thread.sleep(100);
+            dispatcher.dispatch(42, later::countDown);
+            assertTrue(later.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package Tutorial;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Webhook против локальной заглушки Telegram: записанные обновления отправляются
+ * POST-запросами на запущенный WebhookServer
+ */
+class WebhookServerTest {
+
+    private static final String SECRET = "test_secret-123";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<Update> received = new CopyOnWriteArrayList<>();
+    private WebhookServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        // Обработчик отвечает на текстовое сообщение, на остальные обновления - ничего
+        server = new WebhookServer(0, "/webhook", SECRET, 2000, update -> {
+            received.add(update);
+            WebhookReply reply = new WebhookReply(message -> {
+            });
+            if (update.hasMessage()) {
+                reply.offer(new SendMessage(String.valueOf(update.getMessage().getChatId()), "ответ на " + update.getMessage().getText()));
+            }
+            reply.finish(true);
+            return reply;
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    @Test
+    void rejectsUpdateWithoutSecret() throws Exception {
+        HttpResponse<String> response = post(recorded("start.json"), null);
+
+        assertEquals(401, response.statusCode());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void rejectsUpdateWithWrongSecret() throws Exception {
+        HttpResponse<String> response = post(recorded("start.json"), SECRET + "x");
+
+        assertEquals(401, response.statusCode());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void returnsReplyInResponseBody() throws Exception {
+        HttpResponse<String> response = post(recorded("start.json"), SECRET);
+
+        assertEquals(200, response.statusCode());
+        JsonNode body = MAPPER.readTree(response.body());
+        assertEquals("sendmessage", body.get("method").asText());
+        assertEquals("428130917", body.get("chat_id").asText());
+        assertEquals("ответ на /start", body.get("text").asText());
+        assertEquals(815660101, received.get(0).getUpdateId());
+    }
+
+    @Test
+    void acknowledgesUpdateWithoutReply() throws Exception {
+        HttpResponse<String> response = post(recorded("callback.json"), SECRET);
+
+        assertEquals(200, response.statusCode());
+        assertEquals("", response.body());
+        assertEquals("4", received.get(0).getCallbackQuery().getData());
+    }
+
+    @Test
+    void rejectsMalformedUpdate() throws Exception {
+        assertEquals(400, post("{not json", SECRET).statusCode());
+    }
+
+    @Test
+    void rejectsGetRequest() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri()).header(WebhookServer.SECRET_HEADER, SECRET).GET().build();
+
+        assertEquals(405, client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void requiresSecret() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new WebhookServer(0, "/webhook", " ", 2000, update -> null));
+    }
+
+    private HttpResponse<String> post(String body, String secret) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (secret != null) {
+            request.header(WebhookServer.SECRET_HEADER, secret);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri() {
+        return URI.create("http://localhost:" + server.port() + "/webhook");
+    }
+
+    private static String recorded(String name) throws IOException {
+        try (InputStream in = WebhookServerTest.class.getResourceAsStream("/updates/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}